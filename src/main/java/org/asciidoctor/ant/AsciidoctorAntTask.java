@@ -16,20 +16,40 @@
 package org.asciidoctor.ant;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.types.FileSet;
+import org.apache.tools.ant.types.Path;
+import org.apache.tools.ant.types.Reference;
+import org.apache.tools.ant.types.Resource;
+import org.apache.tools.ant.types.ResourceCollection;
 import org.asciidoctor.*;
+import org.asciidoctor.ast.Document;
+import org.asciidoctor.extension.BlockMacroProcessor;
+import org.asciidoctor.extension.BlockProcessor;
+import org.asciidoctor.extension.IncludeProcessor;
+import org.asciidoctor.extension.InlineMacroProcessor;
+import org.asciidoctor.extension.JavaExtensionRegistry;
+import org.asciidoctor.extension.Postprocessor;
+import org.asciidoctor.extension.Preprocessor;
+import org.asciidoctor.extension.Treeprocessor;
 import org.asciidoctor.internal.JRubyRuntimeContext;
 
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class AsciidoctorAntTask extends Task {
 
@@ -43,8 +63,12 @@ public class AsciidoctorAntTask extends Task {
     private String doctype = "article";
     private boolean compact = false;
     private boolean headerFooter = true;
+    private int chunkLevel = 0;
     private String sourceHighlighter;
+    private int highlightCacheSize = 256;
+    private File highlightCacheDirectory;
     private boolean embedAssets = false;
+    private long dataUriCacheSize = 32 * 1024 * 1024;
     private String eruby = "";
     private String templateDir;
     private String templateEngine;
@@ -54,6 +78,8 @@ public class AsciidoctorAntTask extends Task {
     private SafeMode safe = SafeMode.SAFE;
 
     private List<FileSet> resources = new ArrayList<FileSet>();
+    private boolean fingerprintResources = false;
+    private String fingerprintDirectory = "assets";
     private List<Attribute> attributes = new ArrayList<Attribute>();
 
     private List<Extension> preProcessors = new ArrayList<Extension>();
@@ -63,21 +89,91 @@ public class AsciidoctorAntTask extends Task {
     private List<Extension> blockMacroProcessors = new ArrayList<Extension>();
     private List<Extension> inlineMacroProcessors = new ArrayList<Extension>();
     private List<Extension> includeProcessors = new ArrayList<Extension>();
+    private Path classpath;
+
+    private List<Snippet> snippets = new ArrayList<Snippet>();
 
     private List<RubyLibrary> requires = new ArrayList<RubyLibrary>();
     private String gemPaths;
+    private boolean gemIndex = false;
+    private File classDataSharingArchive;
+    private int slowDocumentThreshold = 0;
+    private int documentTimeout = 0;
+    private boolean failOnTimeout = true;
+    private File slowDocumentReport;
+
+    private DataUriCache dataUriCache;
+    private HighlightCache highlightCache;
+    private TemplateCache templateCache;
+    private Timings timings;
+    private DocumentWatchdog watchdog;
+    private ResourceFingerprints resourceFingerprints;
+    private FingerprintPostprocessor fingerprintPostprocessor;
 
     @Override
     public void execute() throws BuildException {
-        checkMandatoryParameter("sourceDirectory", sourceDirectory);
-        checkMandatoryParameter("outputDirectory", outputDirectory);
-
-        ensureOutputExists(outputDirectory);
+        if (snippets.isEmpty()) {
+            checkMandatoryParameter("sourceDirectory", sourceDirectory);
+        }
+        if (sourceDirectory != null) {
+            checkMandatoryParameter("outputDirectory", outputDirectory);
+            ensureOutputExists(outputDirectory);
+        }
+        checkClassDataSharingArchive();
 
+        timings = new Timings();
+        long start = System.nanoTime();
         Asciidoctor asciidoctor = createAsciidoctor(gemPaths);
+        timings.runtimeCreated(start);
         registerAdditionalRubyLibraries(asciidoctor);
         registerExtensions(asciidoctor);
+        registerDataUriCache(asciidoctor);
+        registerHighlightCache(asciidoctor);
+        registerResourceFingerprints(asciidoctor);
+        if (templateDir != null) {
+            OptionsBuilder optionsBuilder = buildOptions();
+            optionsBuilder.attributes(buildAttributes().get());
+            templateCache = new TemplateCache(new File(templateDir), optionsBuilder.get().map());
+            refreshTemplates(asciidoctor);
+        }
+
+        if (sourceDirectory != null) {
+            if (slowDocumentThreshold > 0 || documentTimeout > 0) {
+                watchdog = new DocumentWatchdog(this, slowDocumentThreshold * 1000L, documentTimeout * 1000L, failOnTimeout);
+            }
+            try {
+                renderSourceFiles(asciidoctor);
+            } finally {
+                if (watchdog != null) {
+                    watchdog.close(slowDocumentReport);
+                    watchdog = null;
+                }
+            }
+        }
+        for (Snippet snippet : snippets) {
+            convertSnippet(asciidoctor, snippet);
+        }
+        log(timings.summary(), Project.MSG_VERBOSE);
+        if (dataUriCache != null) {
+            log(dataUriCache.statistics(), Project.MSG_VERBOSE);
+        }
+        if (highlightCache != null) {
+            log(highlightCache.statistics(), Project.MSG_VERBOSE);
+            int pruned = highlightCache.prune();
+            if (pruned > 0) {
+                log("Deleted " + pruned + " highlighted listing(s) unused for " + HighlightCache.MAX_UNUSED_DAYS + " days from " + highlightCacheDirectory, Project.MSG_VERBOSE);
+            }
+        }
+
+        if (sourceDirectory != null) {
+            copyResources();
+        }
+    }
 
+    private void renderSourceFiles(Asciidoctor asciidoctor) {
+        if (chunkLevel > 0 && !isChunked()) {
+            log("chunkLevel is only supported by HTML backends, " + backend + " documents are not chunked", Project.MSG_WARN);
+        }
         AttributesBuilder attributesBuilder = buildAttributes();
         OptionsBuilder optionsBuilder = buildOptions();
         optionsBuilder.attributes(attributesBuilder.get());
@@ -85,21 +181,58 @@ public class AsciidoctorAntTask extends Task {
         if (sourceDocumentName == null) {
             log("Render asciidoc files from " + sourceDirectory + " to " + outputDirectory + " with backend=" + backend);
             for (File file : scanSourceFiles()) {
-                setDestinationPaths(optionsBuilder, file);
-                asciidoctor.renderFile(file, optionsBuilder.get());
+                renderFile(asciidoctor, optionsBuilder, file);
             }
         } else {
             log("Render " + sourceDocumentName + " from " + sourceDirectory + " to " + outputDirectory + " with backend=" + backend);
             File file = new File(sourceDirectory, sourceDocumentName);
-            setDestinationPaths(optionsBuilder, file);
-            asciidoctor.renderFile(file, optionsBuilder.get());
+            renderFile(asciidoctor, optionsBuilder, file);
         }
+    }
 
+    private void registerResourceFingerprints(Asciidoctor asciidoctor) {
+        if (!fingerprintResources || sourceDirectory == null) {
+            return;
+        }
+        // only HTML references are rewritten, other backends embed their resources (pdf) or keep their usual paths
+        if (!isHtml()) {
+            log("fingerprintResources is only supported by HTML backends, resources of " + backend + " documents are copied as is", Project.MSG_WARN);
+            return;
+        }
+        resourceFingerprints = new ResourceFingerprints(new File(outputDirectory, fingerprintDirectory));
+        try {
+            for (FileSet resource : resources) {
+                File destResourceDir = getResourceDestination(resource);
+                for (String includedFile : resource.getDirectoryScanner(getProject()).getIncludedFiles()) {
+                    resourceFingerprints.add(new File(resource.getDir(), includedFile), new File(destResourceDir, includedFile));
+                }
+            }
+        } catch (IOException e) {
+            throw new BuildException("Error fingerprinting resources", e);
+        }
+        fingerprintPostprocessor = new FingerprintPostprocessor(resourceFingerprints);
+        asciidoctor.javaExtensionRegistry().postprocessor(fingerprintPostprocessor);
+    }
+
+    private File getResourceDestination(FileSet resource) throws IOException {
+        String destPath = resource.getDir().getCanonicalPath().substring(sourceDirectory.getCanonicalPath().length());
+        return new File(outputDirectory, destPath);
+    }
+
+    private void copyResources() {
+        if (resourceFingerprints != null) {
+            try {
+                resourceFingerprints.publish();
+            } catch (IOException e) {
+                throw new BuildException("Error copying resources", e);
+            }
+            log("Published " + resourceFingerprints.size() + " distinct resource(s) to " + new File(outputDirectory, fingerprintDirectory), Project.MSG_VERBOSE);
+            return;
+        }
         try {
             for (FileSet resource : resources) {
                 File resourceDir = resource.getDir();
-                String destPath = resourceDir.getCanonicalPath().substring(sourceDirectory.getCanonicalPath().length());
-                File destResourceDir = new File(outputDirectory, destPath);
+                File destResourceDir = getResourceDestination(resource);
                 destResourceDir.mkdirs();
                 String[] includedFiles = resource.getDirectoryScanner(getProject()).getIncludedFiles();
                 FileUtils.copyDirectory(resourceDir, destResourceDir, new ResourceFileFilter(includedFiles), false);
@@ -109,6 +242,110 @@ public class AsciidoctorAntTask extends Task {
         }
     }
 
+    private void renderFile(final Asciidoctor asciidoctor, OptionsBuilder optionsBuilder, final File file) {
+        final File destinationDir = setDestinationPaths(optionsBuilder, file);
+        prepareConversion(asciidoctor, destinationDir);
+        final Options options = optionsBuilder.get();
+        long start = System.nanoTime();
+        if (watchdog == null) {
+            convertFile(asciidoctor, file, options, destinationDir);
+        } else {
+            watchdog.convert(file, asciidoctor, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return convertFile(asciidoctor, file, options, destinationDir);
+                }
+            });
+        }
+        timings.documentRendered(start);
+    }
+
+    private Object convertFile(Asciidoctor asciidoctor, File file, Options options, File destinationDir) {
+        if (!isChunked()) {
+            return asciidoctor.renderFile(file, options);
+        }
+        Document document = asciidoctor.loadFile(file, options.map());
+        ChunkedHtmlWriter writer = new ChunkedHtmlWriter(asciidoctor, document, chunkLevel, destinationDir, FilenameUtils.getBaseName(file.getName()), headerFooter && !embedAssets);
+        try {
+            int pages = writer.write();
+            log("Wrote " + file.getName() + " as " + pages + " page(s)", Project.MSG_VERBOSE);
+        } catch (IOException e) {
+            throw new BuildException("Unable to write the pages of " + file, e);
+        }
+        return null;
+    }
+
+    private boolean isChunked() {
+        return chunkLevel > 0 && isHtml();
+    }
+
+    private boolean isHtml() {
+        return backend.startsWith("html") || "xhtml5".equals(backend);
+    }
+
+    private void convertSnippet(Asciidoctor asciidoctor, Snippet snippet) {
+        if (snippet.getProperty() == null && snippet.getToFile() == null) {
+            throw new BuildException("snippet requires a property or a toFile attribute");
+        }
+        String content = snippet.getContent();
+        OptionsBuilder optionsBuilder = buildOptions();
+        optionsBuilder.attributes(buildAttributes().get());
+        optionsBuilder.baseDir(computeBaseDir(null));
+        prepareConversion(asciidoctor, snippet.getToFile() == null ? null : snippet.getToFile().getAbsoluteFile().getParentFile());
+
+        long start = System.nanoTime();
+        if (snippet.getProperty() == null) {
+            // let Asciidoctor write the file, as binary backends (pdf) can't be converted to a String
+            asciidoctor.convert(content, optionsBuilder.toFile(snippet.getToFile()).get());
+        } else {
+            String output = asciidoctor.convert(content, optionsBuilder.toFile(false).get());
+            getProject().setNewProperty(snippet.getProperty(), output);
+            if (snippet.getToFile() != null) {
+                try {
+                    FileUtils.writeStringToFile(snippet.getToFile(), output, "UTF-8");
+                } catch (IOException e) {
+                    throw new BuildException("Unable to write " + snippet.getToFile(), e);
+                }
+            }
+        }
+        timings.documentRendered(start);
+    }
+
+    private void prepareConversion(Asciidoctor asciidoctor, File documentOutputDir) {
+        if (fingerprintPostprocessor != null) {
+            fingerprintPostprocessor.setOutputDir(documentOutputDir);
+        }
+        refreshTemplates(asciidoctor);
+    }
+
+    private void checkClassDataSharingArchive() {
+        String configuredArchive = Timings.classDataSharingArchive();
+        if (classDataSharingArchive == null || (configuredArchive != null && new File(configuredArchive).getAbsoluteFile().equals(classDataSharingArchive.getAbsoluteFile()))) {
+            return;
+        }
+        if (classDataSharingArchive.exists()) {
+            log("Class data sharing archive " + classDataSharingArchive + " is not configured, start Ant with ANT_OPTS=\"-XX:SharedArchiveFile=" + classDataSharingArchive + "\" to reduce startup time");
+        } else {
+            log("Class data sharing archive " + classDataSharingArchive + " does not exist, create it by running this build once with ANT_OPTS=\"-XX:ArchiveClassesAtExit=" + classDataSharingArchive + "\"");
+        }
+    }
+
+    private void refreshTemplates(Asciidoctor asciidoctor) {
+        if (templateCache == null) {
+            return;
+        }
+        try {
+            long compilationTime = templateCache.refresh(asciidoctor);
+            if (compilationTime >= 0) {
+                log("Compiled templates from " + templateCache.getTemplateDir() + " in " + compilationTime + " ms", Project.MSG_VERBOSE);
+            }
+        } catch (RuntimeException e) {
+            // let Asciidoctor compile the templates itself, and report the error if any
+            log("Unable to compile templates from " + templateCache.getTemplateDir() + ": " + e.getMessage(), Project.MSG_WARN);
+            templateCache = null;
+        }
+    }
+
     private void registerAdditionalRubyLibraries(Asciidoctor asciidoctor) {
         for (RubyLibrary require : requires) {
             asciidoctor.rubyExtensionRegistry().requireLibrary(require.getName());
@@ -122,29 +359,77 @@ public class AsciidoctorAntTask extends Task {
             log("asciidoctor-diagram is not available", Project.MSG_WARN);
         }
 
+        ClassLoader extensionClassLoader = getExtensionClassLoader();
+        JavaExtensionRegistry javaExtensionRegistry = asciidoctor.javaExtensionRegistry();
         for (Extension preProcessor : preProcessors) {
-            asciidoctor.javaExtensionRegistry().preprocessor(preProcessor.getClassName());
+            javaExtensionRegistry.preprocessor(loadExtension(extensionClassLoader, preProcessor, Preprocessor.class));
         }
         for (Extension treeProcessor : treeProcessors) {
-            asciidoctor.javaExtensionRegistry().treeprocessor(treeProcessor.getClassName());
+            javaExtensionRegistry.treeprocessor(loadExtension(extensionClassLoader, treeProcessor, Treeprocessor.class));
         }
         for (Extension postProcessor : postProcessors) {
-            asciidoctor.javaExtensionRegistry().postprocessor(postProcessor.getClassName());
+            javaExtensionRegistry.postprocessor(loadExtension(extensionClassLoader, postProcessor, Postprocessor.class));
         }
         for (Extension blockProcessor : blockProcessors) {
-            asciidoctor.javaExtensionRegistry().block(blockProcessor.getBlockName(), blockProcessor.getClassName());
+            javaExtensionRegistry.block(blockProcessor.getBlockName(), loadExtension(extensionClassLoader, blockProcessor, BlockProcessor.class));
         }
         for (Extension blockMacroProcessor : blockMacroProcessors) {
-            asciidoctor.javaExtensionRegistry().blockMacro(blockMacroProcessor.getBlockName(), blockMacroProcessor.getClassName());
+            javaExtensionRegistry.blockMacro(blockMacroProcessor.getBlockName(), loadExtension(extensionClassLoader, blockMacroProcessor, BlockMacroProcessor.class));
         }
         for (Extension inlineMacroProcessor : inlineMacroProcessors) {
-            asciidoctor.javaExtensionRegistry().inlineMacro(inlineMacroProcessor.getBlockName(), inlineMacroProcessor.getClassName());
+            javaExtensionRegistry.inlineMacro(inlineMacroProcessor.getBlockName(), loadExtension(extensionClassLoader, inlineMacroProcessor, InlineMacroProcessor.class));
         }
         for (Extension includeProcessor : includeProcessors) {
-            asciidoctor.javaExtensionRegistry().includeProcessor(includeProcessor.getClassName());
+            javaExtensionRegistry.includeProcessor(loadExtension(extensionClassLoader, includeProcessor, IncludeProcessor.class));
+        }
+    }
+
+    private ClassLoader getExtensionClassLoader() {
+        if (classpath == null) {
+            return getClass().getClassLoader();
+        }
+        try {
+            return ExtensionClassLoaders.of(getProject()).get(this, classpath.list(), getClass().getClassLoader());
+        } catch (MalformedURLException e) {
+            throw new BuildException("Invalid extension classpath " + classpath, e);
+        }
+    }
+
+    private <T> Class<? extends T> loadExtension(ClassLoader classLoader, Extension extension, Class<T> type) {
+        try {
+            return classLoader.loadClass(extension.getClassName()).asSubclass(type);
+        } catch (ClassNotFoundException e) {
+            throw new BuildException("Unable to load extension " + extension.getClassName(), e);
+        } catch (ClassCastException e) {
+            throw new BuildException(extension.getClassName() + " is not a " + type.getSimpleName(), e);
         }
     }
 
+    private void registerDataUriCache(Asciidoctor asciidoctor) {
+        // Asciidoctor never embeds assets in SECURE mode
+        if (embedAssets && safe.getLevel() < SafeMode.SECURE.getLevel()) {
+            dataUriCache = new DataUriCache(dataUriCacheSize);
+            dataUriCache.install(asciidoctor);
+        }
+    }
+
+    private void registerHighlightCache(Asciidoctor asciidoctor) {
+        // other converters, like the PDF one, can not convert a listing before the document
+        if (highlightCacheSize > 0 && isHtml() && (sourceHighlighter != null || hasAttribute("source-highlighter"))) {
+            highlightCache = new HighlightCache(highlightCacheSize, highlightCacheDirectory);
+            asciidoctor.javaExtensionRegistry().treeprocessor(new HighlightTreeprocessor(highlightCache, asciidoctor));
+        }
+    }
+
+    private boolean hasAttribute(String key) {
+        for (Attribute attribute : attributes) {
+            if (key.equals(attribute.getKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Asciidoctor createAsciidoctor(String gemPath) {
         ClassLoader oldTCCL = Thread.currentThread().getContextClassLoader();
         try {
@@ -166,6 +451,9 @@ public class AsciidoctorAntTask extends Task {
             // because the project's path is converted to string.
             String normalizedGemPath = (File.separatorChar == '\\') ? gemPath.replaceAll("\\\\", "/") : gemPath;
             asciidoctor = Asciidoctor.Factory.create(normalizedGemPath);
+            if (gemIndex) {
+                appendGemLoadPaths(asciidoctor, gemPath);
+            }
         }
 
         String gemHome = JRubyRuntimeContext.get(asciidoctor).evalScriptlet("ENV['GEM_HOME']").toString();
@@ -178,6 +466,50 @@ public class AsciidoctorAntTask extends Task {
         return asciidoctor;
     }
 
+    private void appendGemLoadPaths(Asciidoctor asciidoctor, String gemPath) {
+        Map<String, GemIndex.Gem> gems = new HashMap<String, GemIndex.Gem>();
+        for (String path : gemPath.split(File.pathSeparator)) {
+            GemIndex index = new GemIndex(new File(path));
+            try {
+                for (Map.Entry<String, GemIndex.Gem> gem : index.gems().entrySet()) {
+                    GemIndex.Gem indexed = gems.get(gem.getKey());
+                    if (indexed == null || GemIndex.compareVersions(gem.getValue().getVersion(), indexed.getVersion()) > 0) {
+                        gems.put(gem.getKey(), gem.getValue());
+                    }
+                }
+            } catch (IOException e) {
+                log("Unable to index gems of " + path + ": " + e.getMessage(), Project.MSG_WARN);
+                continue;
+            }
+            if (index.isRebuilt()) {
+                log("Indexed gems of " + path + (index.isStored() ? " in " + index.getIndexFile() : ""), Project.MSG_VERBOSE);
+            }
+        }
+        List<String> loadPaths = GemIndex.loadPaths(gems, requiredGems());
+        if (!loadPaths.isEmpty()) {
+            // appended, so the standard library and the embedded Asciidoctor are still found first
+            RubyScripts.eval(asciidoctor, "$LOAD_PATH.concat(" + RubyScripts.quote(loadPaths) + ")");
+        }
+    }
+
+    private List<String> requiredGems() {
+        List<String> requiredGems = new ArrayList<String>();
+        requiredGems.add("asciidoctor-diagram");
+        if (templateDir != null) {
+            requiredGems.add("tilt");
+        }
+        for (RubyLibrary require : requires) {
+            // a library is usually named after its gem, or is a file of it (asciidoctor/pdf for asciidoctor-pdf)
+            String name = require.getName();
+            requiredGems.add(name);
+            requiredGems.add(name.replace('/', '-'));
+            if (name.contains("/")) {
+                requiredGems.add(name.substring(0, name.indexOf('/')));
+            }
+        }
+        return requiredGems;
+    }
+
     private OptionsBuilder buildOptions() {
         OptionsBuilder optionsBuilder = OptionsBuilder.options();
         optionsBuilder.safe(safe).eruby(eruby).backend(backend).docType(doctype).compact(compact).headerFooter(headerFooter).mkDirs(true);
@@ -190,7 +522,7 @@ public class AsciidoctorAntTask extends Task {
         return optionsBuilder;
     }
 
-    private void setDestinationPaths(OptionsBuilder optionsBuilder, final File sourceFile)  {
+    private File setDestinationPaths(OptionsBuilder optionsBuilder, final File sourceFile)  {
         optionsBuilder.baseDir(computeBaseDir(sourceFile));
         try {
             if (preserveDirectories) {
@@ -198,9 +530,11 @@ public class AsciidoctorAntTask extends Task {
                 File relativePath = new File(outputDirectory, proposalPath);
                 relativePath.mkdirs();
                 optionsBuilder.toDir(relativePath).destinationDir(relativePath);
+                return relativePath;
             } else {
                 File destinationDir = outputDirectory;
                 optionsBuilder.toDir(destinationDir).destinationDir(destinationDir);
+                return destinationDir;
             }
         } catch (IOException e) {
             throw new BuildException("Unable to locate output directory", e);
@@ -213,7 +547,7 @@ public class AsciidoctorAntTask extends Task {
             baseDirFile = new File(baseDir);
         } else {
             // when preserveDirectories == false, parent and sourceDirectory are the same
-            if (relativeBaseDir) {
+            if (relativeBaseDir && sourceFile != null) {
                 baseDirFile = sourceFile.getParentFile();
             } else {
                 baseDirFile = getProject().getBaseDir();
@@ -348,16 +682,36 @@ public class AsciidoctorAntTask extends Task {
         this.headerFooter = headerFooter;
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public void setChunkLevel(int chunkLevel) {
+        this.chunkLevel = chunkLevel;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     public void setSourceHighlighter(String sourceHighlighter) {
         this.sourceHighlighter = sourceHighlighter;
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public void setHighlightCacheSize(int highlightCacheSize) {
+        this.highlightCacheSize = highlightCacheSize;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setHighlightCacheDirectory(File highlightCacheDirectory) {
+        this.highlightCacheDirectory = highlightCacheDirectory;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     public void setEmbedAssets(boolean embedAssets) {
         this.embedAssets = embedAssets;
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public void setDataUriCacheSize(long dataUriCacheSize) {
+        this.dataUriCacheSize = dataUriCacheSize;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     public void setEruby(String eruby) {
         this.eruby = eruby;
@@ -398,6 +752,16 @@ public class AsciidoctorAntTask extends Task {
         resources.add(fileSet);
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public void setFingerprintResources(boolean fingerprintResources) {
+        this.fingerprintResources = fingerprintResources;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setFingerprintDirectory(String fingerprintDirectory) {
+        this.fingerprintDirectory = fingerprintDirectory;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     public Attribute createAttribute() {
         Attribute attribute = new Attribute();
@@ -405,6 +769,96 @@ public class AsciidoctorAntTask extends Task {
         return attribute;
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public Snippet createSnippet() {
+        Snippet snippet = new Snippet();
+        snippets.add(snippet);
+        return snippet;
+    }
+
+    public class Snippet {
+        private StringBuilder text = new StringBuilder();
+        private String sourceProperty;
+        private List<ResourceCollection> sources = new ArrayList<ResourceCollection>();
+        private String property;
+        private File toFile;
+
+        public String getProperty() {
+            return property;
+        }
+
+        public File getToFile() {
+            return toFile;
+        }
+
+        /**
+         * @return the nested text, then the value of the source property, then the nested resources in declaration order,
+         * separated by an empty line so a part never runs into the last block of the previous one
+         */
+        String getContent() {
+            StringBuilder content = new StringBuilder();
+            if (text.toString().trim().length() > 0) {
+                appendPart(content, text.toString());
+            }
+            if (sourceProperty != null) {
+                String value = getProject().getProperty(sourceProperty);
+                if (value == null) {
+                    throw new BuildException("Property " + sourceProperty + " is not set");
+                }
+                appendPart(content, value);
+            }
+            for (ResourceCollection source : sources) {
+                Iterator<?> iterator = source.iterator();
+                while (iterator.hasNext()) {
+                    Resource resource = (Resource) iterator.next();
+                    try {
+                        InputStream input = resource.getInputStream();
+                        try {
+                            appendPart(content, IOUtils.toString(input, "UTF-8"));
+                        } finally {
+                            input.close();
+                        }
+                    } catch (IOException e) {
+                        throw new BuildException("Unable to read " + resource, e);
+                    }
+                }
+            }
+            return content.toString();
+        }
+
+        private void appendPart(StringBuilder content, String part) {
+            if (content.length() > 0) {
+                content.append(content.charAt(content.length() - 1) == '\n' ? "\n" : "\n\n");
+            }
+            content.append(part);
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void addText(String text) {
+            this.text.append(getProject().replaceProperties(text));
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void setSourceProperty(String sourceProperty) {
+            this.sourceProperty = sourceProperty;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void add(ResourceCollection source) {
+            sources.add(source);
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void setProperty(String property) {
+            this.property = property;
+        }
+
+        @SuppressWarnings("UnusedDeclaration")
+        public void setToFile(File toFile) {
+            this.toFile = toFile;
+        }
+    }
+
     public class Attribute {
         private String key;
         private String value;
@@ -498,6 +952,19 @@ public class AsciidoctorAntTask extends Task {
         return extension;
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public Path createClasspath() {
+        if (classpath == null) {
+            classpath = new Path(getProject());
+        }
+        return classpath.createPath();
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setClasspathRef(Reference reference) {
+        createClasspath().setRefid(reference);
+    }
+
     public class Extension {
         private String className;
         private String blockName;
@@ -526,6 +993,36 @@ public class AsciidoctorAntTask extends Task {
         this.gemPaths = gemPaths;
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    public void setGemIndex(boolean gemIndex) {
+        this.gemIndex = gemIndex;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setClassDataSharingArchive(File classDataSharingArchive) {
+        this.classDataSharingArchive = classDataSharingArchive;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setSlowDocumentThreshold(int slowDocumentThreshold) {
+        this.slowDocumentThreshold = slowDocumentThreshold;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setDocumentTimeout(int documentTimeout) {
+        this.documentTimeout = documentTimeout;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setFailOnTimeout(boolean failOnTimeout) {
+        this.failOnTimeout = failOnTimeout;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    public void setSlowDocumentReport(File slowDocumentReport) {
+        this.slowDocumentReport = slowDocumentReport;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     public RubyLibrary createRequire() {
         RubyLibrary rubyLibrary = new RubyLibrary();
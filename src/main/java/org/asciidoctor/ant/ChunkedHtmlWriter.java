@@ -0,0 +1,323 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+import org.asciidoctor.Asciidoctor;
+import org.asciidoctor.ast.Document;
+import org.asciidoctor.ast.Section;
+import org.asciidoctor.ast.StructuralNode;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes a loaded HTML document as one page per section up to a given level, plus an index page holding the
+ * document header and preamble.
+ * Every page is converted by the document converter with the blocks of the document narrowed to the blocks of the
+ * page, so it gets the document header, docinfo, footnotes, highlighter assets and postprocessors like a whole
+ * document. The table of contents of all the pages and navigation links are added to each page, which is converted
+ * and written on its own so the output of the whole document is never held in memory.
+ */
+class ChunkedHtmlWriter {
+
+    private static final Pattern INTERNAL_LINK = Pattern.compile("href=\"#([^\"]+)\"");
+    private static final Pattern GENERATED_TOC = Pattern.compile("<div id=\"toc\" class=\"[^\"]*\">\n.*?</ul>\n</div>\n", Pattern.DOTALL);
+    private static final Pattern BODY_CLASS = Pattern.compile("(<body[^>]* class=\")([^\"]*)\"");
+    private static final Pattern FOOTNOTE = Pattern.compile("<div class=\"footnote\" id=\"_footnote_([^\"]+)\">\n.*?</div>\n?", Pattern.DOTALL);
+    private static final Pattern EMPTY_FOOTNOTES = Pattern.compile("<div id=\"footnotes\">\n<hr/?>\n</div>\n?");
+
+    private static final String CONTENT = "<div id=\"content\">\n";
+    private static final String CLOSING_DIV = "</div>\n";
+
+    private final Asciidoctor asciidoctor;
+    private final Document document;
+    private final int chunkLevel;
+    private final File outputDir;
+    private final String baseName;
+    private final boolean linkStylesheets;
+
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+    private final Map<String, String> pagesById = new HashMap<String, String>();
+
+    /**
+     * @param linkStylesheets whether pages link to shared stylesheets written in the output directory instead of
+     *                        embedding them
+     */
+    ChunkedHtmlWriter(Asciidoctor asciidoctor, Document document, int chunkLevel, File outputDir, String baseName, boolean linkStylesheets) {
+        this.asciidoctor = asciidoctor;
+        this.document = document;
+        this.chunkLevel = chunkLevel;
+        this.outputDir = outputDir;
+        this.baseName = baseName;
+        this.linkStylesheets = linkStylesheets;
+    }
+
+    /**
+     * @return the number of written pages
+     */
+    int write() throws IOException {
+        // the titles are read before the pages set the title attribute, which the document title honours
+        Object titleAttribute = document.getAttribute("title");
+        Chunk index = new Chunk(document, baseName + ".html", false);
+        chunks.add(index);
+        plan(document, index);
+        if (linkStylesheets) {
+            document.setAttribute("linkcss", "", true);
+            writeStylesheets();
+        }
+        String toc = toc();
+        try {
+            for (int i = 0; i < chunks.size(); i++) {
+                writePage(i, toc);
+            }
+        } finally {
+            if (titleAttribute == null) {
+                document.getAttributes().remove("title");
+            } else {
+                document.setAttribute("title", titleAttribute, true);
+            }
+        }
+        return chunks.size();
+    }
+
+    private void plan(StructuralNode parent, Chunk parentChunk) {
+        for (StructuralNode block : parent.getBlocks()) {
+            if (isChunk(block)) {
+                Chunk chunk = new Chunk(block, baseName + "-" + fileName(block, chunks.size()) + ".html", block.getLevel() == chunkLevel);
+                chunks.add(chunk);
+                registerIds(block, chunk.fileName);
+                if (!chunk.complete) {
+                    plan(block, chunk);
+                }
+            } else {
+                registerIds(block, parentChunk.fileName);
+            }
+        }
+    }
+
+    private boolean isChunk(StructuralNode block) {
+        return block instanceof Section && block.getLevel() <= chunkLevel;
+    }
+
+    private void registerIds(StructuralNode node, String fileName) {
+        if (node.getId() != null) {
+            pagesById.put(node.getId(), fileName);
+        }
+        // description lists do not expose their items as blocks
+        if (!"dlist".equals(node.getContext())) {
+            for (StructuralNode child : node.getBlocks()) {
+                registerIds(child, fileName);
+            }
+        }
+    }
+
+    private static String fileName(StructuralNode section, int position) {
+        String id = section.getId() == null ? String.valueOf(position) : section.getId();
+        return id.replaceAll("[^\\w.-]", "_");
+    }
+
+    /**
+     * Writes the stylesheets the pages link to, as Asciidoctor only copies them when it writes a document itself.
+     */
+    private void writeStylesheets() throws IOException {
+        String stylesDir = String.valueOf(document.getAttribute("stylesdir", "."));
+        if (stylesDir.contains("://")) {
+            return;
+        }
+        File stylesOutputDir = new File(stylesDir).isAbsolute() ? new File(stylesDir) : new File(outputDir, stylesDir);
+        FileUtils.forceMkdir(stylesOutputDir);
+        String target = "'" + stylesOutputDir.getPath().replace("\\", "\\\\").replace("'", "\\'") + "'";
+        String stylesheet = String.valueOf(document.getAttribute("stylesheet", ""));
+        if (stylesheet.isEmpty() || "DEFAULT".equals(stylesheet)) {
+            RubyScripts.eval(asciidoctor, "Asciidoctor::Stylesheets.instance.write_primary_stylesheet " + target);
+        }
+        String highlighter = String.valueOf(document.getAttribute("source-highlighter", ""));
+        if ("coderay".equals(highlighter) && "class".equals(document.getAttribute("coderay-css", "class"))) {
+            RubyScripts.eval(asciidoctor, "Asciidoctor::Stylesheets.instance.write_coderay_stylesheet " + target);
+        } else if ("pygments".equals(highlighter) && "class".equals(document.getAttribute("pygments-css", "class"))) {
+            String style = String.valueOf(document.getAttribute("pygments-style", "default")).replace("'", "");
+            RubyScripts.eval(asciidoctor, "Asciidoctor::Stylesheets.instance.write_pygments_stylesheet " + target + ", '" + style + "'");
+        }
+    }
+
+    private String toc() {
+        StringBuilder toc = new StringBuilder("<div id=\"toc\" class=\"toc2\">\n<div id=\"toctitle\">")
+                .append(document.getAttribute("toc-title", "Table of Contents"))
+                .append("</div>\n<ul class=\"sectlevel0\">\n");
+        for (Chunk chunk : chunks) {
+            toc.append("<li class=\"chunk-level").append(chunk.node.getLevel()).append("\"><a href=\"")
+                    .append(chunk.fileName).append("\">").append(chunk.title()).append("</a></li>\n");
+        }
+        return toc.append("</ul>\n</div>\n").toString();
+    }
+
+    private void writePage(int position, String toc) throws IOException {
+        Chunk chunk = chunks.get(position);
+        String html = chunk.convert(position == 0 ? chunk.title() : chunk.title() + " - " + chunks.get(0).title());
+        html = rewriteLinks(keepReferencedFootnotes(layout(html, toc, navigation(position))), chunk.fileName);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(outputDir, chunk.fileName)), "UTF-8"));
+        try {
+            writer.write(html);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private String navigation(int position) {
+        StringBuilder navigation = new StringBuilder("<div class=\"chunk-nav\">");
+        if (position > 0) {
+            navigation.append("<a rel=\"prev\" href=\"").append(chunks.get(position - 1).fileName).append("\">&#171; ").append(chunks.get(position - 1).title()).append("</a> ");
+            navigation.append("<a rel=\"index\" href=\"").append(chunks.get(0).fileName).append("\">").append(chunks.get(0).title()).append("</a> ");
+        }
+        if (position < chunks.size() - 1) {
+            navigation.append("<a rel=\"next\" href=\"").append(chunks.get(position + 1).fileName).append("\">").append(chunks.get(position + 1).title()).append(" &#187;</a>");
+        }
+        return navigation.append("</div>\n").toString();
+    }
+
+    /**
+     * Replaces the table of contents generated for the sections of the page by the one of all the pages, and puts
+     * the navigation links around the content.
+     */
+    private static String layout(String html, String toc, String navigation) {
+        html = GENERATED_TOC.matcher(html).replaceFirst("");
+        int contentStart = html.indexOf(CONTENT);
+        if (contentStart < 0) {
+            // embedded output, without header and footer
+            return toc + navigation + html + (html.endsWith("\n") ? "" : "\n") + navigation;
+        }
+        Matcher bodyClass = BODY_CLASS.matcher(html);
+        if (bodyClass.find() && !(" " + bodyClass.group(2) + " ").contains(" toc2 ")) {
+            html = bodyClass.replaceFirst(Matcher.quoteReplacement(bodyClass.group(1) + bodyClass.group(2) + " toc2 toc-left\""));
+            contentStart = html.indexOf(CONTENT);
+        }
+        StringBuilder page = new StringBuilder(html.length() + 2 * toc.length())
+                .append(html, 0, contentStart).append(toc).append(CONTENT).append(navigation)
+                .append(html, contentStart + CONTENT.length(), html.length());
+        int contentEnd = contentEnd(page, contentStart);
+        if (contentEnd < 0) {
+            page.append(navigation);
+        } else {
+            page.insert(contentEnd, navigation);
+        }
+        return page.toString();
+    }
+
+    private static int contentEnd(StringBuilder page, int contentStart) {
+        for (String next : new String[]{"<div id=\"footnotes\">", "<div id=\"footer\">", "</body>"}) {
+            int position = page.indexOf(next, contentStart);
+            if (position >= 0) {
+                return position >= CLOSING_DIV.length() && page.substring(position - CLOSING_DIV.length(), position).equals(CLOSING_DIV) ? position - CLOSING_DIV.length() : position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Footnotes are collected for the whole document, each page only keeps the ones it references.
+     */
+    private static String keepReferencedFootnotes(String html) {
+        Matcher matcher = FOOTNOTE.matcher(html);
+        StringBuffer kept = new StringBuffer(html.length());
+        while (matcher.find()) {
+            boolean referenced = html.contains("href=\"#_footnote_" + matcher.group(1) + "\"");
+            matcher.appendReplacement(kept, referenced ? Matcher.quoteReplacement(matcher.group()) : "");
+        }
+        matcher.appendTail(kept);
+        return EMPTY_FOOTNOTES.matcher(kept).replaceFirst("");
+    }
+
+    private String rewriteLinks(String html, String fileName) {
+        Matcher matcher = INTERNAL_LINK.matcher(html);
+        StringBuffer rewritten = new StringBuffer(html.length());
+        while (matcher.find()) {
+            String page = pagesById.get(matcher.group(1));
+            String link = page == null || page.equals(fileName) ? matcher.group() : "href=\"" + page + "#" + matcher.group(1) + "\"";
+            matcher.appendReplacement(rewritten, Matcher.quoteReplacement(link));
+        }
+        matcher.appendTail(rewritten);
+        return rewritten.toString();
+    }
+
+    private static void replace(List<StructuralNode> blocks, List<StructuralNode> content) {
+        blocks.clear();
+        blocks.addAll(content);
+    }
+
+    private class Chunk {
+        private final StructuralNode node;
+        private final String fileName;
+        // a complete chunk holds its subsections, the others only the blocks before their first subsection
+        private final boolean complete;
+        private final String title;
+
+        Chunk(StructuralNode node, String fileName, boolean complete) {
+            this.node = node;
+            this.fileName = fileName;
+            this.complete = complete;
+            String title = node == document ? document.getDoctitle() : node.getTitle();
+            this.title = title == null ? baseName : title;
+        }
+
+        String title() {
+            return title;
+        }
+
+        /**
+         * Converts the document with its blocks temporarily narrowed to the ones of this chunk.
+         *
+         * @param pageTitle the title of the page
+         */
+        String convert(String pageTitle) {
+            List<StructuralNode> documentBlocks = document.getBlocks();
+            List<StructuralNode> documentContent = new ArrayList<StructuralNode>(documentBlocks);
+            List<StructuralNode> nodeBlocks = node.getBlocks();
+            List<StructuralNode> nodeContent = new ArrayList<StructuralNode>(nodeBlocks);
+            try {
+                if (!complete) {
+                    nodeBlocks.clear();
+                    for (StructuralNode block : nodeContent) {
+                        if (!isChunk(block)) {
+                            nodeBlocks.add(block);
+                        }
+                    }
+                }
+                if (node != document) {
+                    documentBlocks.clear();
+                    documentBlocks.add(node);
+                }
+                document.setAttribute("title", pageTitle, true);
+                return String.valueOf(document.convert());
+            } finally {
+                if (!complete) {
+                    replace(nodeBlocks, nodeContent);
+                }
+                replace(documentBlocks, documentContent);
+            }
+        }
+    }
+}
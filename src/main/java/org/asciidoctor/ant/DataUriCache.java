@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+import org.asciidoctor.Asciidoctor;
+import org.asciidoctor.internal.JRubyRuntimeContext;
+import org.jruby.Ruby;
+import org.jruby.javasupport.JavaUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps the data-URI encoding of assets read during a task execution, so an image embedded by several documents
+ * is read and base64-encoded only once.
+ * Entries are keyed by canonical path and last modification time, and the cache is bounded by the total length
+ * of the encodings it holds (least recently used entries are evicted first).
+ */
+class DataUriCache implements Function<String, String> {
+
+    private static final String GLOBAL_VARIABLE = "$asciidoctor_ant_data_uri_cache";
+
+    // every data-URI (block and inline images, admonition and callout icons) is generated by this method,
+    // which resolves and jails the path itself: only readable local files are taken from the cache
+    private static final String DATA_URI_HOOK = "module AsciidoctorAntDataUriCache\n"
+            + "  def generate_data_uri target_image, asset_dir_key = nil\n"
+            + "    image_path = normalize_system_path target_image, (asset_dir_key ? (@document.attr asset_dir_key) : nil), nil, :target_name => 'image'\n"
+            + "    ((::File.readable? image_path) && !(::File.extname image_path).empty? && (" + GLOBAL_VARIABLE + ".apply image_path)) || super\n"
+            + "  end\n"
+            + "end\n"
+            + "Asciidoctor::AbstractNode.send :prepend, AsciidoctorAntDataUriCache";
+
+    private final long maxSize;
+    private final Map<String, String> encodings = new LinkedHashMap<String, String>(16, 0.75f, true);
+    private long size;
+
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    DataUriCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Makes Asciidoctor take the data-URIs of the local files it embeds from this cache.
+     */
+    void install(Asciidoctor asciidoctor) {
+        Ruby runtime = JRubyRuntimeContext.get(asciidoctor);
+        runtime.getGlobalVariables().set(GLOBAL_VARIABLE, JavaUtil.convertJavaToUsableRubyObject(runtime, this));
+        RubyScripts.eval(asciidoctor, DATA_URI_HOOK);
+    }
+
+    /**
+     * @return the data-URI of the file, or <code>null</code> to let Asciidoctor read the file itself
+     */
+    @Override
+    public String apply(String path) {
+        try {
+            return get(new File(path));
+        } catch (IOException e) {
+            // Asciidoctor reports unreadable files itself
+            return null;
+        }
+    }
+
+    /**
+     * @return the data-URI of the file, using the same mime type rules as Asciidoctor
+     */
+    String get(File file) throws IOException {
+        File canonicalFile = file.getCanonicalFile();
+        String key = canonicalFile.getPath() + '@' + canonicalFile.lastModified();
+        String dataUri = encodings.get(key);
+        if (dataUri != null) {
+            hits++;
+            return dataUri;
+        }
+        misses++;
+        dataUri = "data:" + mimeType(canonicalFile.getName()) + ";base64," + Base64.getEncoder().encodeToString(FileUtils.readFileToByteArray(canonicalFile));
+        if (dataUri.length() <= maxSize) {
+            encodings.put(key, dataUri);
+            size += dataUri.length();
+            evict();
+        }
+        return dataUri;
+    }
+
+    private void evict() {
+        Iterator<String> iterator = encodings.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().length();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private static String mimeType(String fileName) {
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+        return "svg".equals(extension) ? "image/svg+xml" : "image/" + extension;
+    }
+
+    String statistics() {
+        return "Data-URI cache: " + hits + " hit(s), " + misses + " miss(es), " + evictions + " eviction(s), " + size + " bytes held";
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+import org.asciidoctor.Asciidoctor;
+import org.asciidoctor.internal.JRubyRuntimeContext;
+import org.jruby.RubyThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Converts documents in a worker thread, to warn about documents taking longer than a threshold (with a sample of
+ * the worker stack) and to stop documents exceeding a timeout while the other documents keep going.
+ */
+class DocumentWatchdog {
+
+    private static final int STACK_SAMPLE_DEPTH = 20;
+    private static final long KILL_GRACE_PERIOD = 5000;
+
+    private final Task task;
+    private final long slowThreshold;
+    private final long timeout;
+    private final boolean failOnTimeout;
+    private final List<String> slowDocuments = new ArrayList<String>();
+    private ExecutorService executor;
+
+    /**
+     * @param slowThreshold duration in milliseconds after which a document is reported as slow, 0 to disable
+     * @param timeout       duration in milliseconds after which the conversion of a document is stopped, 0 to disable
+     */
+    DocumentWatchdog(Task task, long slowThreshold, long timeout, boolean failOnTimeout) {
+        this.task = task;
+        this.slowThreshold = slowThreshold;
+        this.timeout = timeout;
+        this.failOnTimeout = failOnTimeout;
+    }
+
+    void convert(final File file, final Asciidoctor asciidoctor, final Callable<?> conversion) {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        final AtomicReference<Thread> worker = new AtomicReference<Thread>();
+        final AtomicReference<RubyThread> rubyThread = new AtomicReference<RubyThread>();
+        long start = System.currentTimeMillis();
+        Future<?> future = executor().submit(new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                worker.set(Thread.currentThread());
+                Thread.currentThread().setContextClassLoader(contextClassLoader);
+                rubyThread.set(JRubyRuntimeContext.get(asciidoctor).getCurrentContext().getThread());
+                return conversion.call();
+            }
+        });
+
+        try {
+            boolean slow = false;
+            // a threshold at or above the timeout never warns, the timeout comes first
+            if (slowThreshold > 0 && (timeout == 0 || slowThreshold < timeout) && !await(future, slowThreshold)) {
+                slow = true;
+                task.log(file + " is still converting after " + slowThreshold + " ms" + stackSample(worker.get()), Project.MSG_WARN);
+            }
+            if (timeout > 0 && !await(future, timeout - (System.currentTimeMillis() - start))) {
+                boolean stopped = stop(future, rubyThread.get());
+                slowDocuments.add(file + "\t" + (System.currentTimeMillis() - start) + " ms\ttimed out");
+                if (!stopped) {
+                    // the abandoned conversion would share the runtime and the caches with the next documents
+                    throw new BuildException("Conversion of " + file + " timed out after " + timeout + " ms and its thread did not stop");
+                }
+                if (failOnTimeout) {
+                    throw new BuildException("Conversion of " + file + " timed out after " + timeout + " ms");
+                }
+                task.log("Conversion of " + file + " timed out after " + timeout + " ms, skipped", Project.MSG_ERR);
+                return;
+            }
+            future.get();
+            if (slow) {
+                slowDocuments.add(file + "\t" + (System.currentTimeMillis() - start) + " ms\tconverted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop(future, rubyThread.get());
+            throw new BuildException("Interrupted while converting " + file, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new BuildException("Unable to convert " + file, e.getCause());
+        }
+    }
+
+    private static boolean await(Future<?> future, long duration) throws InterruptedException, ExecutionException {
+        try {
+            future.get(Math.max(duration, 0), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the worker thread is still running after {@link #KILL_GRACE_PERIOD}
+     */
+    private boolean stop(Future<?> future, RubyThread rubyThread) {
+        // Ruby code only checks for kill requests, Java interruption is not enough to stop a conversion
+        if (rubyThread != null) {
+            rubyThread.kill();
+        }
+        future.cancel(true);
+        ExecutorService stoppedExecutor = executor;
+        executor = null;
+        stoppedExecutor.shutdownNow();
+        try {
+            return stoppedExecutor.awaitTermination(KILL_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static String stackSample(Thread thread) {
+        if (thread == null) {
+            return "";
+        }
+        StringBuilder sample = new StringBuilder();
+        StackTraceElement[] stack = thread.getStackTrace();
+        for (int i = 0; i < Math.min(stack.length, STACK_SAMPLE_DEPTH); i++) {
+            sample.append(System.getProperty("line.separator")).append("\tat ").append(stack[i]);
+        }
+        return sample.toString();
+    }
+
+    private ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "asciidoctor-conversion");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Stops the worker thread, logs the slow documents and writes them to the report file if any.
+     */
+    void close(File report) {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (!slowDocuments.isEmpty()) {
+            task.log(slowDocuments.size() + " slow document(s):", Project.MSG_WARN);
+            for (String slowDocument : slowDocuments) {
+                task.log("  " + slowDocument, Project.MSG_WARN);
+            }
+        }
+        if (report != null) {
+            try {
+                FileUtils.writeLines(report, "UTF-8", slowDocuments);
+            } catch (IOException e) {
+                throw new BuildException("Unable to write " + report, e);
+            }
+        }
+    }
+}
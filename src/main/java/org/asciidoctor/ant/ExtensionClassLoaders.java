@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.tools.ant.BuildEvent;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.SubBuildListener;
+import org.apache.tools.ant.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class loaders of extension classpaths, shared by all the task executions of a build so extension classes are
+ * loaded only once.
+ * Class loaders are kept per parent class loader and classpath, as the same classpath can be used by tasks defined
+ * with different class loaders.
+ * A class loader is replaced when one of its classpath entries is modified, and all of them are closed when the
+ * build (or the <code>ant</code>/<code>antcall</code> sub-build holding them) finishes, so jar files are not kept open
+ * (and locked on Windows) after the build.
+ */
+final class ExtensionClassLoaders implements SubBuildListener {
+
+    private static final String REFERENCE = "asciidoctor.extensionClassLoaders";
+
+    private final Project project;
+    private final Map<ClassLoader, Map<String, CachedClassLoader>> classLoaders = new HashMap<ClassLoader, Map<String, CachedClassLoader>>();
+
+    private ExtensionClassLoaders(Project project) {
+        this.project = project;
+    }
+
+    /**
+     * @return the class loaders of the build of the task, which are held by the Ant project
+     */
+    static ExtensionClassLoaders of(Project project) {
+        synchronized (project) {
+            Object reference = project.getReference(REFERENCE);
+            if (reference instanceof ExtensionClassLoaders) {
+                return (ExtensionClassLoaders) reference;
+            }
+            ExtensionClassLoaders classLoaders = new ExtensionClassLoaders(project);
+            project.addReference(REFERENCE, classLoaders);
+            project.addBuildListener(classLoaders);
+            return classLoaders;
+        }
+    }
+
+    synchronized ClassLoader get(Task task, String[] classpath, ClassLoader parent) throws MalformedURLException {
+        String key = Arrays.toString(classpath);
+        String fingerprint = fingerprint(classpath);
+        Map<String, CachedClassLoader> children = classLoaders.get(parent);
+        if (children == null) {
+            children = new HashMap<String, CachedClassLoader>();
+            classLoaders.put(parent, children);
+        }
+        CachedClassLoader cached = children.get(key);
+        if (cached != null && cached.fingerprint.equals(fingerprint)) {
+            task.log("Reusing extension class loader of " + key, Project.MSG_VERBOSE);
+            return cached.classLoader;
+        }
+        if (cached != null) {
+            close(cached.classLoader);
+        }
+        URL[] urls = new URL[classpath.length];
+        for (int i = 0; i < classpath.length; i++) {
+            urls[i] = new File(classpath[i]).toURI().toURL();
+        }
+        cached = new CachedClassLoader(new URLClassLoader(urls, parent), fingerprint);
+        children.put(key, cached);
+        task.log("Created extension class loader of " + key, Project.MSG_VERBOSE);
+        return cached.classLoader;
+    }
+
+    @Override
+    public void buildFinished(BuildEvent event) {
+        closeAll(event);
+    }
+
+    @Override
+    public void subBuildFinished(BuildEvent event) {
+        closeAll(event);
+    }
+
+    /**
+     * Closes the class loaders when the project holding them finishes, the listeners of a project being also
+     * notified of its sub-builds.
+     */
+    private synchronized void closeAll(BuildEvent event) {
+        if (event.getProject() != project) {
+            return;
+        }
+        for (Map<String, CachedClassLoader> children : classLoaders.values()) {
+            for (CachedClassLoader cached : children.values()) {
+                close(cached.classLoader);
+            }
+        }
+        classLoaders.clear();
+    }
+
+    private static void close(URLClassLoader classLoader) {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            // the jar files are released when the class loader is garbage collected
+        }
+    }
+
+    private static String fingerprint(String[] classpath) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (String entry : classpath) {
+            fingerprint.append(lastModified(new File(entry))).append(File.pathSeparatorChar);
+        }
+        return fingerprint.toString();
+    }
+
+    private static long lastModified(File entry) {
+        if (!entry.isDirectory()) {
+            return entry.lastModified();
+        }
+        long lastModified = entry.lastModified();
+        for (File file : FileUtils.listFiles(entry, null, true)) {
+            lastModified = Math.max(lastModified, file.lastModified());
+        }
+        return lastModified;
+    }
+
+    @Override
+    public void buildStarted(BuildEvent event) {
+    }
+
+    @Override
+    public void subBuildStarted(BuildEvent event) {
+    }
+
+    @Override
+    public void targetStarted(BuildEvent event) {
+    }
+
+    @Override
+    public void targetFinished(BuildEvent event) {
+    }
+
+    @Override
+    public void taskStarted(BuildEvent event) {
+    }
+
+    @Override
+    public void taskFinished(BuildEvent event) {
+    }
+
+    @Override
+    public void messageLogged(BuildEvent event) {
+    }
+
+    private static class CachedClassLoader {
+        private final URLClassLoader classLoader;
+        private final String fingerprint;
+
+        CachedClassLoader(URLClassLoader classLoader, String fingerprint) {
+            this.classLoader = classLoader;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.asciidoctor.ast.Document;
+import org.asciidoctor.extension.Postprocessor;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites the references to resources (<code>src</code>, <code>srcset</code>, <code>href</code>,
+ * <code>poster</code> and <code>data</code> attributes) of the converted HTML output to their fingerprinted file.
+ */
+class FingerprintPostprocessor extends Postprocessor {
+
+    private static final Pattern REFERENCE = Pattern.compile("\\b(src|href|poster|data)=\"([^\"#?:]+)\"");
+    private static final Pattern SRCSET = Pattern.compile("\\bsrcset=\"([^\"]+)\"");
+    private static final Pattern SRCSET_CANDIDATE = Pattern.compile("(^|,)(\\s*)([^\\s,#?:]+)");
+
+    private final ResourceFingerprints fingerprints;
+    private File outputDir;
+
+    FingerprintPostprocessor(ResourceFingerprints fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * @param outputDir the directory of the converted document, references are relative to it
+     */
+    void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @Override
+    public String process(Document document, String output) {
+        if (outputDir == null) {
+            return output;
+        }
+        Matcher matcher = REFERENCE.matcher(output);
+        StringBuffer rewritten = new StringBuffer(output.length());
+        while (matcher.find()) {
+            matcher.appendReplacement(rewritten, Matcher.quoteReplacement(matcher.group(1) + "=\"" + rewrite(matcher.group(2)) + "\""));
+        }
+        matcher.appendTail(rewritten);
+
+        // image candidates of srcset are separated by commas, each one optionally followed by a descriptor
+        matcher = SRCSET.matcher(rewritten.toString());
+        StringBuffer rewrittenSrcsets = new StringBuffer(rewritten.length());
+        while (matcher.find()) {
+            Matcher candidate = SRCSET_CANDIDATE.matcher(matcher.group(1));
+            StringBuffer srcset = new StringBuffer();
+            while (candidate.find()) {
+                candidate.appendReplacement(srcset, Matcher.quoteReplacement(candidate.group(1) + candidate.group(2) + rewrite(candidate.group(3))));
+            }
+            candidate.appendTail(srcset);
+            matcher.appendReplacement(rewrittenSrcsets, Matcher.quoteReplacement("srcset=\"" + srcset + "\""));
+        }
+        matcher.appendTail(rewrittenSrcsets);
+        return rewrittenSrcsets.toString();
+    }
+
+    private String rewrite(String reference) {
+        File published = fingerprints.get(new File(outputDir, reference));
+        return published == null ? reference : relativize(published);
+    }
+
+    private String relativize(File published) {
+        return outputDir.getAbsoluteFile().toPath().normalize()
+                .relativize(published.getAbsoluteFile().toPath().normalize())
+                .toString().replace(File.separatorChar, '/');
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the library directories and runtime dependencies of the gems installed in a gem path, stored in the gem
+ * path itself.
+ * Adding the directories of the required gems to the load path lets <code>require</code> find gem files directly
+ * instead of resolving gem specifications and searching every gem directory.
+ * The index is rebuilt when the content of the <code>specifications</code> directory changes.
+ */
+class GemIndex {
+
+    static final String INDEX_FILE_NAME = "asciidoctor-ant-gems.properties";
+
+    // changed with the layout of the index file, so indexes written by previous versions are rebuilt
+    private static final String FORMAT = "2";
+
+    private static final Pattern NAME = Pattern.compile("\\.name\\s*=\\s*\"([^\"]+)\"");
+    private static final Pattern VERSION = Pattern.compile("\\.version\\s*=\\s*\"([^\"]+)\"");
+    private static final Pattern REQUIRE_PATHS = Pattern.compile("\\.require_paths\\s*=\\s*\\[([^\\]]*)\\]");
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]+)\"");
+    private static final Pattern RUNTIME_DEPENDENCY = Pattern.compile("\\.add_runtime_dependency[\\s(]*(?:%q<([^>]+)>|\"([^\"]+)\")");
+    private static final Pattern DEPENDENCY = Pattern.compile("\\.add_dependency[\\s(]*(?:%q<([^>]+)>|\"([^\"]+)\")");
+    private static final Pattern VERSION_SEGMENT = Pattern.compile("\\d+|[a-zA-Z]+");
+
+    private final File gemPath;
+    private final File indexFile;
+    private boolean rebuilt;
+    private boolean stored = true;
+
+    GemIndex(File gemPath) {
+        this.gemPath = gemPath;
+        this.indexFile = new File(gemPath, INDEX_FILE_NAME);
+    }
+
+    /**
+     * @return the highest installed version of each gem, reading the stored index when it is up to date
+     */
+    Map<String, Gem> gems() throws IOException {
+        String fingerprint = fingerprint();
+        Properties index = new Properties();
+        if (indexFile.isFile()) {
+            InputStream input = new FileInputStream(indexFile);
+            try {
+                index.load(input);
+            } finally {
+                input.close();
+            }
+        }
+        if (!fingerprint.equals(index.getProperty("fingerprint"))) {
+            index = build(fingerprint);
+            rebuilt = true;
+            stored = store(index);
+        }
+        Map<String, Gem> gems = new HashMap<String, Gem>();
+        for (String key : index.stringPropertyNames()) {
+            if (key.startsWith("gem.") && key.endsWith(".version")) {
+                String name = key.substring("gem.".length(), key.length() - ".version".length());
+                gems.put(name, new Gem(index.getProperty(key),
+                        split(index.getProperty("gem." + name + ".paths"), File.pathSeparator),
+                        split(index.getProperty("gem." + name + ".dependencies"), ",")));
+            }
+        }
+        return gems;
+    }
+
+    /**
+     * @param gems     the gems of all the gem paths
+     * @param required the names of the required gems
+     * @return the library directories of the required gems and of their runtime dependencies
+     */
+    static List<String> loadPaths(Map<String, Gem> gems, Collection<String> required) {
+        Set<String> names = new LinkedHashSet<String>();
+        List<String> pending = new ArrayList<String>(required);
+        while (!pending.isEmpty()) {
+            String name = pending.remove(0);
+            Gem gem = gems.get(name);
+            if (gem != null && names.add(name)) {
+                pending.addAll(gem.dependencies);
+            }
+        }
+        List<String> loadPaths = new ArrayList<String>();
+        for (String name : names) {
+            loadPaths.addAll(gems.get(name).loadPaths);
+        }
+        return loadPaths;
+    }
+
+    boolean isRebuilt() {
+        return rebuilt;
+    }
+
+    boolean isStored() {
+        return stored;
+    }
+
+    File getIndexFile() {
+        return indexFile;
+    }
+
+    private String fingerprint() {
+        File specifications = new File(gemPath, "specifications");
+        String[] names = specifications.list();
+        if (names == null) {
+            return "";
+        }
+        Arrays.sort(names);
+        return FORMAT + ':' + specifications.lastModified() + Arrays.toString(names);
+    }
+
+    private Properties build(String fingerprint) throws IOException {
+        // only the highest installed version of a gem is activated by rubygems
+        Map<String, String[]> gems = new HashMap<String, String[]>();
+        File[] specifications = new File(gemPath, "specifications").listFiles();
+        if (specifications != null) {
+            for (File specification : specifications) {
+                if (!specification.getName().endsWith(".gemspec")) {
+                    continue;
+                }
+                String content = FileUtils.readFileToString(specification, "UTF-8");
+                String fullName = specification.getName().substring(0, specification.getName().length() - ".gemspec".length());
+                String name = find(NAME, content, fullName);
+                String version = find(VERSION, content, "0");
+                String[] installed = gems.get(name);
+                if (installed == null || compareVersions(version, installed[0]) > 0) {
+                    gems.put(name, new String[]{version, fullName, content});
+                }
+            }
+        }
+
+        Properties index = new Properties();
+        index.setProperty("fingerprint", fingerprint);
+        for (Map.Entry<String, String[]> gem : gems.entrySet()) {
+            List<String> libDirs = new ArrayList<String>();
+            for (String requirePath : requirePaths(gem.getValue()[2])) {
+                File libDir = new File(new File(new File(gemPath, "gems"), gem.getValue()[1]), requirePath);
+                if (libDir.isDirectory()) {
+                    libDirs.add(libDir.getAbsolutePath());
+                }
+            }
+            index.setProperty("gem." + gem.getKey() + ".version", gem.getValue()[0]);
+            index.setProperty("gem." + gem.getKey() + ".paths", join(libDirs, File.pathSeparator));
+            index.setProperty("gem." + gem.getKey() + ".dependencies", join(dependencies(gem.getValue()[2]), ","));
+        }
+        return index;
+    }
+
+    private boolean store(Properties index) {
+        try {
+            OutputStream output = new FileOutputStream(indexFile);
+            try {
+                index.store(output, "Generated by asciidoctor-ant, rebuilt when gems are installed or removed");
+            } finally {
+                output.close();
+            }
+            return true;
+        } catch (IOException e) {
+            // read-only gem path, the index is only used for this build
+            return false;
+        }
+    }
+
+    private static List<String> requirePaths(String specification) {
+        List<String> requirePaths = new ArrayList<String>();
+        Matcher matcher = REQUIRE_PATHS.matcher(specification);
+        if (matcher.find()) {
+            Matcher quoted = QUOTED.matcher(matcher.group(1));
+            while (quoted.find()) {
+                requirePaths.add(quoted.group(1));
+            }
+        } else {
+            requirePaths.add("lib");
+        }
+        return requirePaths;
+    }
+
+    private static Set<String> dependencies(String specification) {
+        // generated specifications declare runtime dependencies with add_runtime_dependency, and repeat all the
+        // dependencies (development ones included) with add_dependency for older rubygems versions
+        Matcher matcher = RUNTIME_DEPENDENCY.matcher(specification);
+        if (!matcher.find()) {
+            matcher = DEPENDENCY.matcher(specification);
+        } else {
+            matcher.reset();
+        }
+        Set<String> dependencies = new LinkedHashSet<String>();
+        while (matcher.find()) {
+            dependencies.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+        }
+        return dependencies;
+    }
+
+    private static String find(Pattern pattern, String content, String defaultValue) {
+        Matcher matcher = pattern.matcher(content);
+        return matcher.find() ? matcher.group(1) : defaultValue;
+    }
+
+    private static String join(Collection<String> values, String separator) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) {
+                joined.append(separator);
+            }
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+
+    private static List<String> split(String value, String separator) {
+        if (value == null || value.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(value.split(Pattern.quote(separator)));
+    }
+
+    /**
+     * Compares versions like rubygems: segments are numbers or letters (<code>1.0.0.rc1</code> is
+     * <code>1, 0, 0, rc, 1</code>), missing segments are zeros and letters are lower than numbers, so prereleases
+     * come before their release.
+     */
+    static int compareVersions(String version, String other) {
+        List<String> segments = segments(version);
+        List<String> otherSegments = segments(other);
+        for (int i = 0; i < Math.max(segments.size(), otherSegments.size()); i++) {
+            String segment = i < segments.size() ? segments.get(i) : "0";
+            String otherSegment = i < otherSegments.size() ? otherSegments.get(i) : "0";
+            boolean numeric = Character.isDigit(segment.charAt(0));
+            boolean otherNumeric = Character.isDigit(otherSegment.charAt(0));
+            int comparison;
+            if (numeric && otherNumeric) {
+                comparison = Long.valueOf(segment).compareTo(Long.valueOf(otherSegment));
+            } else if (numeric != otherNumeric) {
+                comparison = numeric ? 1 : -1;
+            } else {
+                comparison = segment.compareTo(otherSegment);
+            }
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private static List<String> segments(String version) {
+        List<String> segments = new ArrayList<String>();
+        Matcher matcher = VERSION_SEGMENT.matcher(version);
+        while (matcher.find()) {
+            segments.add(matcher.group());
+        }
+        return segments;
+    }
+
+    static class Gem {
+        private final String version;
+        private final List<String> loadPaths;
+        private final List<String> dependencies;
+
+        Gem(String version, List<String> loadPaths, List<String> dependencies) {
+            this.version = version;
+            this.loadPaths = loadPaths;
+            this.dependencies = dependencies;
+        }
+
+        String getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the converted output of syntax-highlighted blocks, in a LRU memory tier and optionally in a directory,
+ * so the same listing is highlighted only once across documents and builds.
+ * Entries of the directory not used for {@link #MAX_UNUSED_DAYS} days are deleted by {@link #prune()}.
+ */
+class HighlightCache {
+
+    static final int MAX_UNUSED_DAYS = 30;
+
+    // changed whenever the way fragments are produced changes, so older directory entries are no longer used
+    private static final String FORMAT = "2";
+    // the directory may be shared, only the files named after a key are entries
+    private static final Pattern ENTRY = Pattern.compile("[0-9a-f]{64}\\.html");
+
+    private final Map<String, String> fragments;
+    private final File directory;
+
+    private int memoryHits;
+    private int diskHits;
+    private int misses;
+
+    HighlightCache(final int maxEntries, File directory) {
+        this.fragments = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.directory = directory;
+        if (directory != null) {
+            directory.mkdirs();
+        }
+    }
+
+    /**
+     * @return a key digesting all the parts that can change the highlighted output
+     */
+    static String key(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return the cached fragment, or <code>null</code> if it must be highlighted
+     */
+    String get(String key) {
+        String fragment = fragments.get(key);
+        if (fragment != null) {
+            memoryHits++;
+            return fragment;
+        }
+        if (directory != null) {
+            File file = new File(directory, key + ".html");
+            if (file.isFile()) {
+                try {
+                    fragment = FileUtils.readFileToString(file, "UTF-8");
+                    // the modification time tells when the entry was last used
+                    file.setLastModified(System.currentTimeMillis());
+                    fragments.put(key, fragment);
+                    diskHits++;
+                    return fragment;
+                } catch (IOException e) {
+                    // unreadable entry, highlight again
+                }
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    void put(String key, String fragment) {
+        fragments.put(key, fragment);
+        if (directory != null) {
+            try {
+                FileUtils.writeStringToFile(new File(directory, key + ".html"), fragment, "UTF-8");
+            } catch (IOException e) {
+                // the disk tier is only an optimization, the fragment stays in memory
+            }
+        }
+    }
+
+    /**
+     * Deletes the entries of the directory not used for {@link #MAX_UNUSED_DAYS} days.
+     *
+     * @return the number of deleted entries
+     */
+    int prune() {
+        int deleted = 0;
+        File[] files = directory == null ? null : directory.listFiles();
+        if (files != null) {
+            long limit = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+            for (File file : files) {
+                if (ENTRY.matcher(file.getName()).matches() && file.lastModified() < limit && file.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    String statistics() {
+        return "Highlight cache: " + memoryHits + " memory hit(s), " + diskHits + " disk hit(s), " + misses + " miss(es)";
+    }
+}
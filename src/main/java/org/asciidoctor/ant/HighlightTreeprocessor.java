@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.asciidoctor.Asciidoctor;
+import org.asciidoctor.ast.Block;
+import org.asciidoctor.ast.Document;
+import org.asciidoctor.ast.StructuralNode;
+import org.asciidoctor.extension.Treeprocessor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces source listings by passthrough blocks holding their converted output, taken from a {@link HighlightCache}
+ * when the same listing has already been highlighted.
+ * Listings with callouts are left to the converter because callout numbering is shared by the whole document, and
+ * so are listings with attributes, macros or replacements substitutions, whose output depends on more than their
+ * source.
+ */
+class HighlightTreeprocessor extends Treeprocessor {
+
+    // highlighters running in the browser leave nothing to cache
+    private static final List<String> SERVER_SIDE_HIGHLIGHTERS = Arrays.asList("coderay", "pygments", "rouge");
+    private static final Pattern CALLOUT = Pattern.compile("(?m)(<!--\\d+-->|<\\d+>|<\\.>)\\s*$");
+    private static final List<String> EXPANDING_SUBSTITUTIONS = Arrays.asList("attributes", "macros", "replacements");
+
+    // the libraries producing the output of a highlighter, their versions are part of the cache key
+    private static final Map<String, String> VERSION_SCRIPTS = new HashMap<String, String>();
+
+    static {
+        VERSION_SCRIPTS.put("coderay", "require 'coderay'\n::CodeRay::VERSION");
+        VERSION_SCRIPTS.put("pygments", "require 'pygments'\n::Pygments::VERSION");
+        VERSION_SCRIPTS.put("rouge", "require 'rouge'\n::Rouge.version");
+    }
+
+    private final HighlightCache cache;
+    private final Asciidoctor asciidoctor;
+    private final Map<String, String> versions = new HashMap<String, String>();
+
+    HighlightTreeprocessor(HighlightCache cache, Asciidoctor asciidoctor) {
+        this.cache = cache;
+        this.asciidoctor = asciidoctor;
+    }
+
+    @Override
+    public Document process(Document document) {
+        String highlighter = String.valueOf(document.getAttribute("source-highlighter", ""));
+        if (SERVER_SIDE_HIGHLIGHTERS.contains(highlighter)) {
+            replaceListings(document, highlighter);
+        }
+        return document;
+    }
+
+    private void replaceListings(StructuralNode parent, String highlighter) {
+        // description lists do not expose their items as blocks
+        if ("dlist".equals(parent.getContext())) {
+            return;
+        }
+        List<StructuralNode> blocks = parent.getBlocks();
+        for (int i = 0; i < blocks.size(); i++) {
+            StructuralNode block = blocks.get(i);
+            if (isHighlighted(block)) {
+                blocks.set(i, createBlock(parent, "pass", highlight((Block) block, highlighter), new HashMap<String, Object>()));
+            } else {
+                replaceListings(block, highlighter);
+            }
+        }
+    }
+
+    private boolean isHighlighted(StructuralNode block) {
+        return block instanceof Block
+                && "listing".equals(block.getContext())
+                && "source".equals(block.getStyle())
+                && block.hasAttribute("language")
+                && !CALLOUT.matcher(((Block) block).getSource()).find()
+                && !hasExpandingSubstitution(block);
+    }
+
+    private static boolean hasExpandingSubstitution(StructuralNode block) {
+        for (String substitution : EXPANDING_SUBSTITUTIONS) {
+            if (block.isSubstitutionEnabled(substitution)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String highlight(Block block, String highlighter) {
+        Document document = block.getDocument();
+        String key = HighlightCache.key(
+                document.getAttribute("backend", "").toString(),
+                version(highlighter),
+                String.valueOf(document.hasAttribute("prewrap")),
+                document.getAttribute(highlighter + "-css", "").toString(),
+                document.getAttribute(highlighter + "-style", "").toString(),
+                document.getAttribute(highlighter + "-linenums-mode", "").toString(),
+                new TreeMap<String, Object>(block.getAttributes()).toString(),
+                block.getId(),
+                block.getCaption(),
+                block.getTitle(),
+                block.getSource());
+        String fragment = cache.get(key);
+        if (fragment == null) {
+            fragment = String.valueOf(block.convert());
+            cache.put(key, fragment);
+        }
+        return fragment;
+    }
+
+    /**
+     * @return the versions of Asciidoctor and of the highlighter library, empty when the library is missing
+     */
+    private String version(String highlighter) {
+        String version = versions.get(highlighter);
+        if (version == null) {
+            version = RubyScripts.eval(asciidoctor, "begin\n" + VERSION_SCRIPTS.get(highlighter)
+                    + ".to_s\nrescue ::LoadError, ::NameError\n''\nend").toString();
+            version = highlighter + " " + version + " asciidoctor " + RubyScripts.eval(asciidoctor, "::Asciidoctor::VERSION");
+            versions.put(highlighter, version);
+        }
+        return version;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes resources once per content in a single directory, with the content hash in their file name, and keeps
+ * track of the published file of each path a resource would have been copied to.
+ * Stylesheets and scripts are copied to their usual path instead, as the relative URLs they hold would break in
+ * the publish directory. Resources not referenced by the converted documents, or referenced by a
+ * <code>url()</code> of a stylesheet, are copied to their usual path as well.
+ */
+class ResourceFingerprints {
+
+    private static final int FINGERPRINT_LENGTH = 16;
+    private static final Pattern UNPUBLISHED = Pattern.compile("(?i).*\\.(css|js)");
+    private static final Pattern STYLESHEET_URL = Pattern.compile("url\\(\\s*['\"]?([^'\")?#]+)");
+
+    private final File publishDirectory;
+    private final Map<String, File> publishedByHash = new HashMap<String, File>();
+    private final Map<File, File> publishedByPath = new HashMap<File, File>();
+    private final Map<File, File> sources = new LinkedHashMap<File, File>();
+    private final Map<File, File> copies = new LinkedHashMap<File, File>();
+    private final Set<File> referenced = new HashSet<File>();
+
+    ResourceFingerprints(File publishDirectory) {
+        this.publishDirectory = publishDirectory;
+    }
+
+    /**
+     * @param source      the resource file
+     * @param destination the path the resource would be copied to without fingerprinting
+     */
+    void add(File source, File destination) throws IOException {
+        if (UNPUBLISHED.matcher(source.getName()).matches()) {
+            copies.put(normalize(destination), source);
+            return;
+        }
+        String hash = hash(source);
+        File published = publishedByHash.get(hash);
+        if (published == null) {
+            String name = source.getName();
+            int extension = name.lastIndexOf('.');
+            String fingerprintedName = extension > 0
+                    ? name.substring(0, extension) + '-' + hash + name.substring(extension)
+                    : name + '-' + hash;
+            published = new File(publishDirectory, fingerprintedName);
+            publishedByHash.put(hash, published);
+            sources.put(published, source);
+        }
+        publishedByPath.put(normalize(destination), published);
+    }
+
+    /**
+     * @return the published file replacing the given destination, or <code>null</code> if it is not published
+     */
+    File get(File destination) {
+        File normalized = normalize(destination);
+        File published = publishedByPath.get(normalized);
+        if (published != null) {
+            referenced.add(normalized);
+        }
+        return published;
+    }
+
+    /**
+     * Copies each distinct resource once, skipping the ones already published by a previous build, and copies the
+     * other resources to their usual path.
+     */
+    void publish() throws IOException {
+        for (Map.Entry<File, File> entry : sources.entrySet()) {
+            if (!entry.getKey().exists()) {
+                FileUtils.copyFile(entry.getValue(), entry.getKey(), false);
+            }
+        }
+        Set<File> stylesheetUrls = stylesheetUrls();
+        for (Map.Entry<File, File> entry : publishedByPath.entrySet()) {
+            if (!referenced.contains(entry.getKey()) || stylesheetUrls.contains(entry.getKey())) {
+                FileUtils.copyFile(entry.getValue(), entry.getKey(), false);
+            }
+        }
+        for (Map.Entry<File, File> entry : copies.entrySet()) {
+            FileUtils.copyFile(entry.getValue(), entry.getKey(), false);
+        }
+    }
+
+    private Set<File> stylesheetUrls() throws IOException {
+        Set<File> urls = new HashSet<File>();
+        for (Map.Entry<File, File> entry : copies.entrySet()) {
+            if (entry.getKey().getName().toLowerCase().endsWith(".css")) {
+                Matcher matcher = STYLESHEET_URL.matcher(FileUtils.readFileToString(entry.getValue(), "UTF-8"));
+                while (matcher.find()) {
+                    urls.add(normalize(new File(entry.getKey().getParentFile(), matcher.group(1).trim())));
+                }
+            }
+        }
+        return urls;
+    }
+
+    int size() {
+        return sources.size();
+    }
+
+    private static File normalize(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    private static String hash(File file) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            InputStream input = new FileInputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            } finally {
+                input.close();
+            }
+            StringBuilder hash = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.substring(0, FINGERPRINT_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
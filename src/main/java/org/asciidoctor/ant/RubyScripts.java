@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.asciidoctor.Asciidoctor;
+import org.asciidoctor.internal.JRubyRuntimeContext;
+import org.jruby.runtime.builtin.IRubyObject;
+
+import java.util.Collection;
+
+/**
+ * Helpers to evaluate Ruby code in the runtime of an {@link Asciidoctor} instance.
+ */
+final class RubyScripts {
+
+    private RubyScripts() {
+    }
+
+    static IRubyObject eval(Asciidoctor asciidoctor, String script) {
+        return JRubyRuntimeContext.get(asciidoctor).evalScriptlet(script);
+    }
+
+    /**
+     * @return a single-quoted Ruby string literal, or <code>nil</code>
+     */
+    static String quote(String value) {
+        if (value == null) {
+            return "nil";
+        }
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    /**
+     * @return a Ruby array literal of strings
+     */
+    static String quote(Collection<String> values) {
+        StringBuilder array = new StringBuilder("[");
+        for (String value : values) {
+            if (array.length() > 1) {
+                array.append(", ");
+            }
+            array.append(quote(value));
+        }
+        return array.append("]").toString();
+    }
+}
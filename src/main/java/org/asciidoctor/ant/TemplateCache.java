@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import org.apache.commons.io.FileUtils;
+import org.asciidoctor.Asciidoctor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the templates of a template directory once, in the template cache Asciidoctor shares between all the
+ * documents rendered by a runtime, and compiles them again when one of the template files changes.
+ * The template files are checked at most once every {@link #CHECK_INTERVAL} milliseconds, so large template
+ * directories are not listed for every document.
+ */
+class TemplateCache {
+
+    static final long CHECK_INTERVAL = 2000;
+
+    private final File templateDir;
+    private final Map<String, Object> options;
+    private String fingerprint;
+    private long lastCheck;
+
+    /**
+     * @param options the options the documents are converted with, which decide how the templates are compiled
+     */
+    TemplateCache(File templateDir, Map<String, Object> options) {
+        this.templateDir = templateDir.getAbsoluteFile();
+        this.options = options;
+    }
+
+    /**
+     * Compiles the templates if they were never compiled or if they changed since the last compilation.
+     *
+     * @return the compilation time in milliseconds, or -1 if the compiled templates are up to date or were checked
+     * less than {@link #CHECK_INTERVAL} milliseconds ago
+     */
+    long refresh(Asciidoctor asciidoctor) {
+        long now = System.currentTimeMillis();
+        if (fingerprint != null && now - lastCheck < CHECK_INTERVAL) {
+            return -1;
+        }
+        lastCheck = now;
+        String currentFingerprint = fingerprint();
+        if (currentFingerprint.equals(fingerprint)) {
+            return -1;
+        }
+        long start = System.nanoTime();
+        RubyScripts.eval(asciidoctor, "require 'asciidoctor/converter/template'\n"
+                + "Asciidoctor::Converter::TemplateConverter.clear_caches");
+        // the converter of a document compiles the templates with the backend, htmlsyntax, eruby, safe mode and
+        // engine options the document resolves, into the cache the next documents use
+        asciidoctor.load("", options);
+        fingerprint = currentFingerprint;
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private String fingerprint() {
+        List<String> entries = new ArrayList<String>();
+        if (templateDir.isDirectory()) {
+            for (File template : FileUtils.listFiles(templateDir, null, true)) {
+                entries.add(template.getPath() + '@' + template.lastModified() + '#' + template.length());
+            }
+        }
+        Collections.sort(entries);
+        return entries.toString();
+    }
+
+    File getTemplateDir() {
+        return templateDir;
+    }
+}
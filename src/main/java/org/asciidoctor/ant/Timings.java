@@ -0,0 +1,69 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the cold start (runtime creation and first document) and the whole rendering of a task execution.
+ */
+class Timings {
+
+    private static final String SHARED_ARCHIVE_FILE = "-XX:SharedArchiveFile=";
+
+    private long runtimeCreation;
+    private long firstDocument = -1;
+    private long rendering;
+    private int documents;
+
+    void runtimeCreated(long start) {
+        runtimeCreation = elapsed(start);
+    }
+
+    void documentRendered(long start) {
+        long duration = elapsed(start);
+        if (firstDocument < 0) {
+            firstDocument = duration;
+        }
+        rendering += duration;
+        documents++;
+    }
+
+    String summary() {
+        String archive = classDataSharingArchive();
+        return "Asciidoctor runtime created in " + runtimeCreation + " ms"
+                + (archive == null ? " (no class data sharing archive configured)" : " (class data sharing archive " + archive + " configured)")
+                + ", " + documents + " document(s) rendered in " + rendering + " ms"
+                + (documents > 0 ? " (first one in " + firstDocument + " ms)" : "");
+    }
+
+    /**
+     * @return the application class data sharing archive configured for the running JVM, or <code>null</code>.
+     * The JVM silently ignores an archive it can't use (created by another JDK or with another classpath).
+     */
+    static String classDataSharingArchive() {
+        for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (argument.startsWith(SHARED_ARCHIVE_FILE)) {
+                return argument.substring(SHARED_ARCHIVE_FILE.length());
+            }
+        }
+        return null;
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
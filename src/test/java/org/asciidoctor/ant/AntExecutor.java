@@ -15,19 +15,24 @@
  */
 package org.asciidoctor.ant;
 
+import org.apache.tools.ant.BuildEvent;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.BuildListener;
 import org.apache.tools.ant.DefaultLogger;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectHelper;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class AntExecutor {
 
     private String buildXml;
     private Map<String, String> properties = new HashMap<String, String>();
+    private List<String> messages = new ArrayList<String>();
 
     public AntExecutor(String buildxml) {
         this.buildXml = buildxml;
@@ -51,6 +56,7 @@ public class AntExecutor {
         File buildFile = new File(buildXml);
         project.setUserProperty("ant.file", buildFile.getAbsolutePath());
         project.addBuildListener(consoleLogger);
+        project.addBuildListener(new MessageRecorder());
 
         // Capture event for Ant script build start / stop / failure
         try {
@@ -73,6 +79,13 @@ public class AntExecutor {
         }
     }
 
+    /**
+     * @return the messages logged by the executed tasks, up to verbose level
+     */
+    public List<String> getMessages() {
+        return messages;
+    }
+
     private static DefaultLogger getConsoleLogger() {
         DefaultLogger consoleLogger = new DefaultLogger();
         consoleLogger.setErrorPrintStream(System.err);
@@ -80,4 +93,38 @@ public class AntExecutor {
         consoleLogger.setMessageOutputLevel(Project.MSG_INFO);
         return consoleLogger;
     }
-}
+
+    private class MessageRecorder implements BuildListener {
+
+        @Override
+        public void messageLogged(BuildEvent event) {
+            if (event.getTask() != null && event.getPriority() <= Project.MSG_VERBOSE) {
+                messages.add(event.getMessage());
+            }
+        }
+
+        @Override
+        public void buildStarted(BuildEvent event) {
+        }
+
+        @Override
+        public void buildFinished(BuildEvent event) {
+        }
+
+        @Override
+        public void targetStarted(BuildEvent event) {
+        }
+
+        @Override
+        public void targetFinished(BuildEvent event) {
+        }
+
+        @Override
+        public void taskStarted(BuildEvent event) {
+        }
+
+        @Override
+        public void taskFinished(BuildEvent event) {
+        }
+    }
+}
\ No newline at end of file
@@ -17,6 +17,7 @@ package org.asciidoctor.ant;
 
 import junitparams.JUnitParamsRunner;
 import junitparams.Parameters;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
@@ -27,8 +28,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
+import javax.tools.ToolProvider;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -82,6 +86,31 @@ public class AsciidoctorAntTaskTest {
         assertThat(IOUtils.toString(new FileInputStream(out))).contains("<a href=\"http://www.twitter.com/@binout\">@binout</a>");
     }
 
+    @Test
+    public void should_load_extension_from_classpath() throws IOException {
+        File extensionClasses = folder.newFolder("extension-classes");
+        File source = new File(sourceDirectory("extension-classpath/org/asciidoctor/ant/isolated/ShoutMacro.java"), "ShoutMacro.java");
+        int compilation = ToolProvider.getSystemJavaCompiler().run(null, null, null,
+                "-classpath", System.getProperty("java.class.path"), "-d", extensionClasses.getAbsolutePath(), source.getAbsolutePath());
+        assertThat(compilation).isZero();
+        String outputDirectory = outputDirectory("asciidoctor-classpath");
+        String document = "shout.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", document));
+        antExecutor.setProperty("extensionClasses", extensionClasses.getAbsolutePath());
+
+        // both tasks of the target use the same classpath
+        antExecutor.executeAntTask("asciidoctor-classpath");
+
+        for (String execution : new String[]{"first", "second"}) {
+            File out = new File(outputDirectory, execution + "/shout.html");
+            assertThat(out).exists();
+            assertThat(IOUtils.toString(new FileInputStream(out))).contains("<strong>HELLO</strong>");
+        }
+        String classpath = "[" + extensionClasses.getAbsolutePath() + "]";
+        assertThat(countMessages("Created extension class loader of " + classpath)).isEqualTo(1);
+        assertThat(countMessages("Reusing extension class loader of " + classpath)).isEqualTo(1);
+    }
+
     @Test
     public void should_use_asciidoctor_diagram() throws IOException {
         String outputDirectory = outputDirectory("asciidoctor-diagram");
@@ -108,6 +137,130 @@ public class AsciidoctorAntTaskTest {
         assertThat(IOUtils.toString(new FileInputStream(out))).contains("deck.js");
     }
 
+    @Test
+    public void should_compile_templates_once_and_again_when_they_change() throws IOException {
+        File sourceDirectory = folder.newFolder("templateCache-source");
+        FileUtils.writeStringToFile(new File(sourceDirectory, "first.adoc"), "First paragraph", "UTF-8");
+        FileUtils.writeStringToFile(new File(sourceDirectory, "second.adoc"), "Second paragraph", "UTF-8");
+        File templateDir = folder.newFolder("templateCache-templates");
+        File template = new File(templateDir, "paragraph.html.erb");
+        FileUtils.writeStringToFile(template, "<p class=\"before-change\"><%= content %></p>", "UTF-8");
+        String outputDirectory = outputDirectory("asciidoctor-templateCache");
+        antExecutor.setProperties(initProperties(sourceDirectory.getAbsolutePath(), outputDirectory, "html5"));
+        antExecutor.setProperty("templateDir", templateDir.getAbsolutePath());
+        antExecutor.setProperty("gemPaths", sourceDirectory("simple.adoc") + "/gems-provided");
+
+        antExecutor.executeAntTask("asciidoctor-templateCache");
+
+        assertThat(countMessages("Compiled templates from " + templateDir)).isEqualTo(1);
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "first.html")))).contains("<p class=\"before-change\">First paragraph</p>");
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "second.html")))).contains("<p class=\"before-change\">Second paragraph</p>");
+
+        FileUtils.writeStringToFile(template, "<p class=\"after-change\"><%= content %></p>", "UTF-8");
+        antExecutor.executeAntTask("asciidoctor-templateCache");
+
+        assertThat(countMessages("Compiled templates from " + templateDir)).isEqualTo(2);
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "first.html")))).contains("<p class=\"after-change\">First paragraph</p>");
+    }
+
+    @Test
+    public void should_compile_haml_templates_as_html_for_html5() throws IOException {
+        File sourceDirectory = folder.newFolder("templateCache-haml-source");
+        FileUtils.writeStringToFile(new File(sourceDirectory, "first.adoc"), "First paragraph", "UTF-8");
+        File templateDir = folder.newFolder("templateCache-haml-templates");
+        FileUtils.writeStringToFile(new File(templateDir, "paragraph.html.haml"), ".paragraph\n  %hr\n  %p= content\n", "UTF-8");
+        String outputDirectory = outputDirectory("asciidoctor-templateCache-haml");
+        antExecutor.setProperties(initProperties(sourceDirectory.getAbsolutePath(), outputDirectory, "html5"));
+        antExecutor.setProperty("templateDir", templateDir.getAbsolutePath());
+        antExecutor.setProperty("gemPaths", sourceDirectory("simple.adoc") + "/gems-provided");
+
+        antExecutor.executeAntTask("asciidoctor-templateCache-haml");
+
+        assertThat(countMessages("Compiled templates from " + templateDir)).isEqualTo(1);
+        String content = IOUtils.toString(new FileInputStream(new File(outputDirectory, "first.html")));
+        assertThat(content).contains("<hr>").contains("<p>First paragraph</p>");
+        assertThat(content).doesNotContain("<hr />");
+    }
+
+    @Test
+    public void should_index_gems() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-gemIndex");
+        String document = "slide.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "deckjs", document));
+
+        antExecutor.executeAntTask("asciidoctor-gemIndex");
+
+        File out = new File(outputDirectory, "slide.html");
+        assertThat(out).exists();
+        assertThat(IOUtils.toString(new FileInputStream(out))).contains("deck.js");
+        File index = new File(sourceDirectory(document), "gems-provided/" + GemIndex.INDEX_FILE_NAME);
+        assertThat(index).exists();
+        assertThat(IOUtils.toString(new FileInputStream(index))).contains("gem.haml.dependencies=tilt");
+    }
+
+    @Test
+    public void should_report_missing_class_data_sharing_archive_and_timings() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-classDataSharingArchive");
+        String document = "simple.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", document));
+
+        antExecutor.executeAntTask("asciidoctor-classDataSharingArchive");
+
+        File archive = new File(outputDirectory, "asciidoctor.jsa");
+        assertThat(antExecutor.getMessages()).contains("Class data sharing archive " + archive
+                + " does not exist, create it by running this build once with ANT_OPTS=\"-XX:ArchiveClassesAtExit=" + archive + "\"");
+        String summary = null;
+        for (String message : antExecutor.getMessages()) {
+            if (message.startsWith("Asciidoctor runtime created in ")) {
+                summary = message;
+            }
+        }
+        assertThat(summary).contains("configured)").contains(", 1 document(s) rendered in ").contains("(first one in ");
+    }
+
+    @Test
+    public void should_chunk_html_output() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-chunked");
+        String document = "slide.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", document));
+
+        antExecutor.executeAntTask("asciidoctor-chunked");
+
+        assertThat(new File(outputDirectory, "slide.html")).exists();
+        assertThat(new File(outputDirectory, "asciidoctor.css")).exists();
+        File firstPage = new File(outputDirectory, "slide-_slide_1.html");
+        assertThat(firstPage).exists();
+        assertThat(new File(outputDirectory, "slide-_slide_2.html")).exists();
+        String content = IOUtils.toString(new FileInputStream(firstPage));
+        assertThat(content).contains("foo");
+        assertThat(content).contains("<a rel=\"next\" href=\"slide-_slide_2.html\">");
+    }
+
+    @Test
+    public void should_keep_header_and_footnotes_of_chunked_pages() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-chunked-footnotes");
+        String document = "chunked/guide.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", "guide.adoc"));
+
+        antExecutor.executeAntTask("asciidoctor-chunked");
+
+        String index = IOUtils.toString(new FileInputStream(new File(outputDirectory, "guide.html")));
+        assertThat(index).contains("<span id=\"author\" class=\"author\">Jane Doe</span>");
+        assertThat(index).contains("<span id=\"revnumber\">version 1.2,</span>");
+        assertThat(index).contains("The preamble.");
+        String first = IOUtils.toString(new FileInputStream(new File(outputDirectory, "guide-_first.html")));
+        assertThat(first).contains("href=\"#_footnote_1\"");
+        assertThat(first).contains("<div class=\"footnote\" id=\"_footnote_1\">");
+        assertThat(first).contains("The first note.");
+        assertThat(first).doesNotContain("The second note.");
+        String second = IOUtils.toString(new FileInputStream(new File(outputDirectory, "guide-_second.html")));
+        assertThat(second).contains("<div class=\"footnote\" id=\"_footnote_2\">");
+        assertThat(second).doesNotContain("The first note.");
+        assertThat(second).doesNotContain("The preamble.");
+        assertThat(second).contains("<title>Second - Guide</title>");
+        assertThat(second).contains("<a rel=\"index\" href=\"guide.html\">Guide</a>");
+    }
+
     @Test
     public void should_manage_extensions() throws IOException {
         String outputDirectory = outputDirectory("asciidoctor-ext");
@@ -143,6 +296,55 @@ public class AsciidoctorAntTaskTest {
         assertThat(new File(outputDirectory, "subfolder/another.html")).exists();
     }
 
+    @Test
+    public void should_watch_document_conversions() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-watchdog");
+        antExecutor.setProperties(initProperties(sourceDirectory("rootfolder/index.adoc"), outputDirectory, "html5"));
+
+        antExecutor.executeAntTask("asciidoctor-watchdog");
+
+        assertThat(new File(outputDirectory, "index.html")).exists();
+        assertThat(new File(outputDirectory, "subfolder/another.html")).exists();
+        assertThat(new File(outputDirectory, "slow-documents.txt")).exists();
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "slow-documents.txt")))).isEmpty();
+    }
+
+    @Test
+    public void should_warn_about_slow_documents_and_skip_timed_out_ones() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-watchdog-timeout");
+        String sourceDirectory = sourceDirectory("watchdog/slow.adoc");
+        antExecutor.setProperties(initProperties(sourceDirectory, outputDirectory, "html5"));
+        antExecutor.setProperty("slowDocumentThreshold", "1");
+
+        antExecutor.executeAntTask("asciidoctor-watchdog-timeout");
+
+        File slow = new File(sourceDirectory, "slow.adoc");
+        File stuck = new File(sourceDirectory, "stuck.adoc");
+        assertThat(countMessages(slow + " is still converting after 1000 ms")).isEqualTo(1);
+        assertThat(countMessages(stuck + " is still converting after 1000 ms")).isEqualTo(1);
+        assertThat(antExecutor.getMessages()).contains("Conversion of " + stuck + " timed out after 3000 ms, skipped");
+        assertThat(new File(outputDirectory, "slow.html")).exists();
+        assertThat(new File(outputDirectory, "stuck.html")).doesNotExist();
+        String report = IOUtils.toString(new FileInputStream(new File(outputDirectory, "slow-documents.txt")));
+        assertThat(report).matches("(?s).*" + Pattern.quote(slow.toString()) + "\\t\\d+ ms\\tconverted.*");
+        assertThat(report).matches("(?s).*" + Pattern.quote(stuck.toString()) + "\\t\\d+ ms\\ttimed out.*");
+    }
+
+    @Test
+    public void should_time_out_before_a_higher_slow_document_threshold() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-watchdog-timeout");
+        String sourceDirectory = sourceDirectory("watchdog/slow.adoc");
+        antExecutor.setProperties(initProperties(sourceDirectory, outputDirectory, "html5"));
+        antExecutor.setProperty("slowDocumentThreshold", "60");
+
+        long start = System.currentTimeMillis();
+        antExecutor.executeAntTask("asciidoctor-watchdog-timeout");
+
+        assertThat(System.currentTimeMillis() - start).isLessThan(30000);
+        assertThat(antExecutor.getMessages()).contains("Conversion of " + new File(sourceDirectory, "stuck.adoc") + " timed out after 3000 ms, skipped");
+        assertThat(countMessages(new File(sourceDirectory, "slow.adoc").toString())).isZero();
+    }
+
     @Test
     public void should_manage_resources() throws IOException {
         String outputDirectory = outputDirectory("asciidoctor-resources");
@@ -155,6 +357,38 @@ public class AsciidoctorAntTaskTest {
         assertThat(new File(outputDirectory, "images/ftw.jpg")).exists();
     }
 
+    @Test
+    public void should_fingerprint_resources() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-fingerprintResources");
+        String document = "simple.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", document));
+
+        antExecutor.executeAntTask("asciidoctor-fingerprintResources");
+
+        String[] published = new File(outputDirectory, "assets").list();
+        assertThat(published).hasSize(1);
+        assertThat(published[0]).matches("ftw-[0-9a-f]{16}\\.jpg");
+        assertThat(new File(outputDirectory, "images/ftw.jpg")).doesNotExist();
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "simple.html")))).contains("src=\"assets/" + published[0] + "\"");
+    }
+
+    @Test
+    public void should_keep_stylesheets_and_their_resources_when_fingerprinting() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-fingerprintResources-stylesheet");
+        String document = "index.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory("fingerprint/index.adoc"), outputDirectory, "html5", document));
+
+        antExecutor.executeAntTask("asciidoctor-fingerprintResources-stylesheet");
+
+        String content = IOUtils.toString(new FileInputStream(new File(outputDirectory, "index.html")));
+        assertThat(content).matches("(?s).*srcset=\"assets/ftw-[0-9a-f]{16}\\.jpg 1x, assets/ftw-large-[0-9a-f]{16}\\.jpg 2x\" src=\"assets/ftw-[0-9a-f]{16}\\.jpg\".*");
+        assertThat(content).contains("href=\"css/site.css\"");
+        assertThat(new File(outputDirectory, "css/site.css")).exists();
+        assertThat(new File(outputDirectory, "images/background.png")).exists();
+        assertThat(new File(outputDirectory, "images/ftw.jpg")).doesNotExist();
+        assertThat(new File(outputDirectory, "images/ftw-large.jpg")).doesNotExist();
+    }
+
     @Test
     public void should_manage_relativebasedir() throws IOException {
         String outputDirectory = outputDirectory("asciidoctor-relativebasedir");
@@ -180,6 +414,106 @@ public class AsciidoctorAntTaskTest {
         assertThat(new File(outputDirectory, "simple.html")).exists();
     }
     
+    @Test
+    public void should_embed_images_as_data_uri() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-embedAssets");
+        String document = "simple.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", document));
+
+        antExecutor.executeAntTask("asciidoctor-embedAssets");
+
+        File out = new File(outputDirectory, "simple.html");
+        assertThat(out).exists();
+        assertThat(IOUtils.toString(new FileInputStream(out))).contains("src=\"data:image/jpg;base64,");
+    }
+
+    @Test
+    public void should_reuse_data_uri_of_images() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-dataUriCache");
+        antExecutor.setProperties(initProperties(sourceDirectory("datauri/first.adoc"), outputDirectory, "html5"));
+
+        antExecutor.executeAntTask("asciidoctor-dataUriCache");
+
+        // block image, inline image and admonition icon of both documents, the image is read once
+        assertThat(antExecutor.getMessages()).contains("Data-URI cache: 5 hit(s), 1 miss(es), 0 eviction(s), " + dataUriLength("images/ftw.jpg") + " bytes held");
+        for (String document : new String[]{"first.html", "second.html"}) {
+            String content = IOUtils.toString(new FileInputStream(new File(outputDirectory, document)));
+            assertThat(content).contains("<img src=\"data:image/jpg;base64,");
+            assertThat(content).doesNotContain("ftw.jpg");
+        }
+    }
+
+    @Test
+    public void should_cache_highlighted_listings() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-highlightCache");
+        String document = "highlight.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "html5", document));
+
+        antExecutor.executeAntTask("asciidoctor-highlightCache");
+
+        File out = new File(outputDirectory, "highlight.html");
+        assertThat(out).exists();
+        assertThat(IOUtils.toString(new FileInputStream(out))).contains("CodeRay");
+        assertThat(new File(outputDirectory, "highlight-cache").list()).hasSize(1);
+        assertThat(antExecutor.getMessages()).contains("Highlight cache: 1 memory hit(s), 0 disk hit(s), 1 miss(es)");
+    }
+
+    @Test
+    public void should_not_cache_highlighted_listings_of_pdf_documents() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-highlightCache-pdf");
+        String document = "highlight.adoc";
+        antExecutor.setProperties(initProperties(sourceDirectory(document), outputDirectory, "pdf", document));
+
+        antExecutor.executeAntTask("asciidoctor-highlightCache");
+
+        assertThat(new File(outputDirectory, "highlight.pdf")).exists();
+        assertThat(new File(outputDirectory, "highlight-cache").exists()).isFalse();
+        assertThat(countMessages("Highlight cache:")).isEqualTo(0);
+    }
+
+    @Test
+    public void should_not_cache_listings_with_attributes() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-highlightCache-attributes");
+        antExecutor.setProperties(initProperties(sourceDirectory("highlight-attributes/first.adoc"), outputDirectory, "html5"));
+
+        antExecutor.executeAntTask("asciidoctor-highlightCache-attributes");
+
+        String first = IOUtils.toString(new FileInputStream(new File(outputDirectory, "first.html")));
+        assertThat(first).contains("4.7.1-first").doesNotContain("4.7.1-second");
+        String second = IOUtils.toString(new FileInputStream(new File(outputDirectory, "second.html")));
+        assertThat(second).contains("4.7.1-second").doesNotContain("4.7.1-first");
+        assertThat(new File(outputDirectory, "highlight-cache").list()).isEmpty();
+    }
+
+    @Test
+    public void should_convert_snippets() throws IOException {
+        String outputDirectory = outputDirectory("asciidoctor-snippet");
+        antExecutor.setProperty("outputDirectory", outputDirectory);
+        antExecutor.setProperty("backend", "html5");
+
+        antExecutor.executeAntTask("asciidoctor-snippet");
+
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "snippet.html")))).contains("Release <strong>notes</strong>");
+        assertThat(IOUtils.toString(new FileInputStream(new File(outputDirectory, "source.html")))).contains("Written by <strong>html5</strong>");
+        String parts = IOUtils.toString(new FileInputStream(new File(outputDirectory, "parts.html")));
+        assertThat(parts).contains("Written by <strong>html5</strong>").contains(">Section</h2>");
+    }
+
+    private int countMessages(String prefix) {
+        int count = 0;
+        for (String message : antExecutor.getMessages()) {
+            if (message.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private long dataUriLength(String image) throws IOException {
+        File file = new File(sourceDirectory(image), new File(image).getName());
+        return "data:image/jpg;base64,".length() + Base64.getEncoder().encodeToString(IOUtils.toByteArray(new FileInputStream(file))).length();
+    }
+
     private String buildXml(String fileName) {
         URL resource = Thread.currentThread().getContextClassLoader().getResource(fileName);
         if (resource == null) {
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(JUnitParamsRunner.class)
+public class GemIndexTest {
+
+    @Test
+    @Parameters({
+            "1.0.0, 1.0.0, 0",
+            "1.0, 1.0.0, 0",
+            "1.10.0, 1.9.0, 1",
+            "1.0.0.rc1, 1.0.0, -1",
+            "1.0.0, 1.0.0.rc1, 1",
+            "1.0.0.beta, 1.0.0.rc1, -1",
+            "1.0.0.rc2, 1.0.0.rc1, 1",
+            "2.0.0.alpha, 1.9.9, 1",
+            "1.5.0.alpha.16, 1.5.0.alpha.9, 1"
+    })
+    public void should_compare_versions_like_rubygems(String version, String other, int expected) {
+        assertThat(Integer.signum(GemIndex.compareVersions(version, other))).isEqualTo(expected);
+    }
+
+    @Test
+    public void should_only_load_required_gems_and_their_dependencies() {
+        Map<String, GemIndex.Gem> gems = new HashMap<String, GemIndex.Gem>();
+        gems.put("haml", new GemIndex.Gem("4.0.5", Arrays.asList("/gems/haml-4.0.5/lib"), Arrays.asList("tilt", "rails")));
+        gems.put("tilt", new GemIndex.Gem("2.0.1", Arrays.asList("/gems/tilt-2.0.1/lib"), Collections.<String>emptyList()));
+        gems.put("json", new GemIndex.Gem("2.1.0", Arrays.asList("/gems/json-2.1.0/lib"), Collections.<String>emptyList()));
+
+        assertThat(GemIndex.loadPaths(gems, Arrays.asList("haml", "unknown")))
+                .containsExactly("/gems/haml-4.0.5/lib", "/gems/tilt-2.0.1/lib");
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant.extensions;
+
+import org.asciidoctor.ast.ContentNode;
+import org.asciidoctor.extension.InlineMacroProcessor;
+
+import java.util.Map;
+
+public class SleepMacro extends InlineMacroProcessor {
+
+    public SleepMacro(String macroName) {
+        super(macroName);
+    }
+
+    public SleepMacro(String macroName, Map<String, Object> config) {
+        super(macroName, config);
+    }
+
+    @Override
+    public Object process(ContentNode parent, String milliseconds, Map<String, Object> attributes) {
+        // Slow down the conversion, until the watchdog stops it.
+        try {
+            Thread.sleep(Long.parseLong(milliseconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted after a timeout", e);
+        }
+        return "slept " + milliseconds + " ms";
+    }
+}
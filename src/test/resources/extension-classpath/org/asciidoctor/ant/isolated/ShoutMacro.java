@@ -0,0 +1,44 @@
+/*
+ * Copyright 2014 Benoît Prioux
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.asciidoctor.ant.isolated;
+
+import org.asciidoctor.ast.ContentNode;
+import org.asciidoctor.extension.InlineMacroProcessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled by the tests into a directory which is only on the nested classpath of the task, never on the test
+ * classpath.
+ */
+public class ShoutMacro extends InlineMacroProcessor {
+
+    public ShoutMacro(String macroName) {
+        super(macroName);
+    }
+
+    public ShoutMacro(String macroName, Map<String, Object> config) {
+        super(macroName, config);
+    }
+
+    @Override
+    public Object process(ContentNode parent, String target, Map<String, Object> attributes) {
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("type", ":strong");
+        return createPhraseNode(parent, "quoted", target.toUpperCase(), attributes, options).convert();
+    }
+}